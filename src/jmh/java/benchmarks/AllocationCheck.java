@@ -0,0 +1,96 @@
+package benchmarks;
+
+import edu.wpi.first.vision.VisionPipeline;
+import org.opencv.core.Mat;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Fails when GripPipeline.process starts allocating per frame again. Run with
+ * "./gradlew allocationCheck".
+ *
+ * <p>For each blob extraction and resolution, the pipeline is warmed up on a synthetic
+ * frame and then run again while counting the Java heap bytes this thread allocates and
+ * the native Mats tracked by MatTracker. Connected components get only a small fixed
+ * allowance. findContours always builds fresh MatOfPoint wrappers, so it is also allowed
+ * a fixed amount per contour it returns. Tracked native Mats, findContours output included, must not
+ * grow from frame to frame.
+ */
+public final class AllocationCheck {
+    private static final String[] resolutions = {"160x120", "320x240", "640x480"};
+    private static final int warmupFrames = 500;
+    private static final int measuredFrames = 500;
+    // findContours' wrappers: a Mat and a MatOfPoint per contour, each with a finalizer
+    private static final long contourBytes = 512;
+    // the findContours call itself, and measurement noise
+    private static final long frameBytes = 1024;
+
+    private AllocationCheck() {
+    }
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        boolean passed = true;
+        for (String extraction : new String[] {"contours", "components"}) {
+            for (String resolution : resolutions) {
+                passed &= check(extraction, resolution);
+            }
+        }
+        if (!passed) {
+            System.out.println("Allocation check failed");
+            System.exit(1);
+        }
+        System.out.println("Allocation check passed");
+    }
+
+    private static boolean check(String extraction, String resolution) throws ReflectiveOperationException {
+        Mat frame = BenchmarkFrames.load("synthetic", resolution);
+        Object spec = VisionAccess.callStatic("PipelineSpec", "grip", new Class<?>[] {String.class}, extraction);
+        Object plan = VisionAccess.callStatic("PipelinePlan", "compile",
+                new Class<?>[] {Class.forName("PipelineSpec"), boolean.class}, spec, false);
+        VisionPipeline pipeline = (VisionPipeline) VisionAccess.newInstance("GripPipeline",
+                new Class<?>[] {Class.forName("PipelinePlan")}, plan);
+        setTrackerDebug(false);
+        for (int i = 0; i < warmupFrames; i++) {
+            pipeline.process(frame);
+        }
+
+        // heap first, with the tracker's bookkeeping off the per-frame path
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < measuredFrames; i++) {
+            pipeline.process(frame);
+        }
+        long bytesPerFrame = (threads.getThreadAllocatedBytes(thread) - before) / measuredFrames;
+        int contours = VisionAccess.<List<?>>call(pipeline, "findContoursOutput").size();
+        long budget = frameBytes + contours * contourBytes;
+
+        // then native, tracking per-frame outputs too
+        setTrackerDebug(true);
+        pipeline.process(frame);
+        int liveBefore = VisionAccess.callStatic("MatTracker", "liveCount", new Class<?>[0]);
+        long liveBytesBefore = VisionAccess.callStatic("MatTracker", "liveBytes", new Class<?>[0]);
+        for (int i = 0; i < measuredFrames; i++) {
+            pipeline.process(frame);
+        }
+        int liveGrowth = VisionAccess.<Integer>callStatic("MatTracker", "liveCount", new Class<?>[0]) - liveBefore;
+        long liveBytesGrowth = VisionAccess.<Long>callStatic("MatTracker", "liveBytes", new Class<?>[0]) - liveBytesBefore;
+        setTrackerDebug(false);
+
+        VisionAccess.<Void>call(pipeline, "release");
+        frame.release();
+
+        boolean passed = bytesPerFrame <= budget && liveGrowth <= 0 && liveBytesGrowth <= 0;
+        System.out.println(String.format(Locale.ROOT,
+                "%-4s %-10s %-8s %6d heap bytes/frame (budget %d, %d contours), %+d tracked Mats, %+d native bytes",
+                passed ? "ok" : "FAIL", extraction, resolution, bytesPerFrame, budget, contours,
+                liveGrowth, liveBytesGrowth));
+        return passed;
+    }
+
+    private static void setTrackerDebug(boolean debug) {
+        VisionAccess.callStatic("MatTracker", "setDebug", new Class<?>[] {boolean.class}, debug);
+    }
+}
@@ -0,0 +1,101 @@
+package benchmarks;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Frames to benchmark against, either synthetic or recorded.
+ *
+ * <p>"recorded" is only a benchmark parameter when ./gradlew jmh finds a frames directory,
+ * so a plain run benchmarks the synthetic frame alone.
+ */
+final class BenchmarkFrames {
+    // the most recorded frames held in memory, spread evenly over the directory
+    private static final int maxRecorded = 64;
+    private static final Scalar targetColor = new Scalar(40, 220, 60); // BGR, inside the HSV range
+
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    private BenchmarkFrames() {
+    }
+
+    /**
+     * Load one frame, the first recorded one for "recorded".
+     *
+     * @param source "synthetic" or "recorded"
+     * @param resolution WIDTHxHEIGHT, e.g. "320x240"
+     */
+    static Mat load(String source, String resolution) {
+        Mat[] frames = loadAll(source, resolution);
+        for (int i = 1; i < frames.length; i++) {
+            frames[i].release();
+        }
+        return frames[0];
+    }
+
+    /**
+     * Load every frame of the source: the one synthetic frame, or up to 64 recorded ones
+     * taken evenly from the whole directory.
+     */
+    static Mat[] loadAll(String source, String resolution) {
+        String[] parts = resolution.split("x");
+        int width = Integer.parseInt(parts[0]);
+        int height = Integer.parseInt(parts[1]);
+        if ("recorded".equals(source)) {
+            return recorded(width, height);
+        }
+        return new Mat[] {synthetic(width, height)};
+    }
+
+    /**
+     * A dim noisy background with one target and a scattering of small noise blobs.
+     */
+    static Mat synthetic(int width, int height) {
+        Core.setRNGSeed(1091);
+        Mat frame = new Mat(height, width, CvType.CV_8UC3);
+        Core.randu(frame, 0, 60);
+
+        Imgproc.rectangle(frame, new Point(width * 0.4, height * 0.35),
+                new Point(width * 0.6, height * 0.5), targetColor, Core.FILLED);
+
+        Random random = new Random(1091);
+        for (int i = 0; i < 25; i++) {
+            Point center = new Point(random.nextInt(width), random.nextInt(height));
+            Imgproc.circle(frame, center, 1 + random.nextInt(3), targetColor, Core.FILLED);
+        }
+        return frame;
+    }
+
+    /**
+     * Images from the directory named by the vision.frames property, in name order and
+     * scaled to size.
+     */
+    static Mat[] recorded(int width, int height) {
+        File dir = new File(System.getProperty("vision.frames", "frames"));
+        File[] images = dir.listFiles((d, name) -> name.endsWith(".jpg") || name.endsWith(".png"));
+        if (images == null || images.length == 0) {
+            throw new IllegalStateException("no recorded frames in " + dir.getAbsolutePath());
+        }
+        Arrays.sort(images);
+        Mat[] frames = new Mat[Math.min(images.length, maxRecorded)];
+        for (int i = 0; i < frames.length; i++) {
+            Mat image = Imgcodecs.imread(images[(int) ((long) i * images.length / frames.length)].getPath());
+            frames[i] = new Mat();
+            Imgproc.resize(image, frames[i], new Size(width, height), 0, 0, Imgproc.INTER_AREA);
+            image.release();
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import edu.wpi.first.vision.VisionPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opencv.core.Mat;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-frame throughput of GripPipeline and PipelineWrapper, taking the source's frames
+ * in turn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    @Param({"160x120", "320x240", "640x480"})
+    public String resolution;
+
+    @Param("synthetic")
+    public String source;
+
+    private Mat[] frames;
+    private int next;
+    private VisionPipeline gripPipeline;
+    private VisionPipeline pipelineWrapper;
+
+    @Setup
+    public void setup() {
+        frames = BenchmarkFrames.loadAll(source, resolution);
+        gripPipeline = VisionAccess.newPipeline("GripPipeline");
+        pipelineWrapper = VisionAccess.newPipeline("PipelineWrapper");
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Mat frame : frames) {
+            frame.release();
+        }
+    }
+
+    private Mat nextFrame() {
+        Mat frame = frames[next];
+        next = (next + 1) % frames.length;
+        return frame;
+    }
+
+    /**
+     * Blur, threshold, dilate and findContours.
+     */
+    @Benchmark
+    public VisionPipeline gripProcess() {
+        gripPipeline.process(nextFrame());
+        return gripPipeline;
+    }
+
+    /**
+     * The pooled frame copy, the GRIP pipeline and largest-target selection.
+     */
+    @Benchmark
+    public VisionPipeline wrapperProcess() {
+        pipelineWrapper.process(nextFrame());
+        return pipelineWrapper;
+    }
+}
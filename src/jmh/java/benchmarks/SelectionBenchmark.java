@@ -0,0 +1,86 @@
+package benchmarks;
+
+import edu.wpi.first.vision.VisionPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picking the largest contour out of a real findContours result, from the source's first
+ * frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectionBenchmark {
+    @Param({"160x120", "320x240", "640x480"})
+    public String resolution;
+
+    @Param("synthetic")
+    public String source;
+
+    private List<MatOfPoint> contours;
+
+    @Setup
+    public void setup() {
+        Mat frame = BenchmarkFrames.load(source, resolution);
+        VisionPipeline pipeline = VisionAccess.newPipeline("GripPipeline");
+        pipeline.process(frame);
+        contours = VisionAccess.call(pipeline, "findContoursOutput");
+    }
+
+    /**
+     * The original UpdateLargestContour loop, which measures the running largest again on
+     * every iteration.
+     */
+    @Benchmark
+    public Rect largestRemeasuringEachTime() {
+        int largestContour = -1;
+        for (int i = 0; i < contours.size(); i++) {
+            if (largestContour == -1) {
+                largestContour = i;
+            }
+            var areaNew = Imgproc.contourArea(contours.get(i));
+            var areaOld = Imgproc.contourArea(contours.get(largestContour));
+            if (areaNew > areaOld) {
+                largestContour = i;
+            }
+        }
+        return largestContour == -1 ? null : Imgproc.boundingRect(contours.get(largestContour));
+    }
+
+    /**
+     * One contourArea per contour, as PipelineWrapper does.
+     */
+    @Benchmark
+    public Rect largestMeasuringOnce() {
+        int largestContour = -1;
+        double largestArea = 0;
+        for (int i = 0; i < contours.size(); i++) {
+            double area = Imgproc.contourArea(contours.get(i));
+            if (largestContour == -1 || area > largestArea) {
+                largestContour = i;
+                largestArea = area;
+            }
+        }
+        return largestContour == -1 ? null : Imgproc.boundingRect(contours.get(largestContour));
+    }
+}
@@ -0,0 +1,107 @@
+package benchmarks;
+
+import edu.wpi.first.vision.VisionPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each GripPipeline step on its own, fed with the previous step's real output and run with
+ * the pipeline's own parameters. Only the source's first frame is used, since every step
+ * is fed the output of the steps before it on that frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmark {
+    @Param({"160x120", "320x240", "640x480"})
+    public String resolution;
+
+    @Param("synthetic")
+    public String source;
+
+    private Mat frame;
+    private Mat threshold;
+    private Mat dilated;
+    private Scalar low;
+    private Scalar high;
+    private final Mat kernel = new Mat();
+    private final Point anchor = new Point(-1, -1);
+    private final Scalar borderValue = new Scalar(-1);
+    private final Mat blurOut = new Mat();
+    private final Mat hsvOut = new Mat();
+    private final Mat rangeOut = new Mat();
+    private final Mat dilateOut = new Mat();
+    private final Mat hierarchy = new Mat();
+    private final List<MatOfPoint> contours = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        frame = BenchmarkFrames.load(source, resolution);
+        VisionPipeline pipeline = VisionAccess.newPipeline("GripPipeline");
+        pipeline.process(frame);
+        threshold = VisionAccess.<Mat>call(pipeline, "hsvThresholdOutput").clone();
+        dilated = VisionAccess.<Mat>call(pipeline, "cvDilateOutput").clone();
+        low = VisionAccess.field(pipeline, "hsvThresholdLow");
+        high = VisionAccess.field(pipeline, "hsvThresholdHigh");
+        Imgproc.cvtColor(frame, hsvOut, Imgproc.COLOR_BGR2HSV);
+    }
+
+    /**
+     * The smallest real median blur, for comparison with the skipped radius 0 blur.
+     */
+    @Benchmark
+    public Mat medianBlur3() {
+        Imgproc.medianBlur(frame, blurOut, 3);
+        return blurOut;
+    }
+
+    @Benchmark
+    public Mat cvtColorHsv() {
+        Imgproc.cvtColor(frame, hsvOut, Imgproc.COLOR_BGR2HSV);
+        return hsvOut;
+    }
+
+    @Benchmark
+    public Mat inRange() {
+        Core.inRange(hsvOut, low, high, rangeOut);
+        return rangeOut;
+    }
+
+    @Benchmark
+    public Mat dilate() {
+        Imgproc.dilate(threshold, dilateOut, kernel, anchor, 1, Core.BORDER_CONSTANT, borderValue);
+        return dilateOut;
+    }
+
+    @Benchmark
+    public List<MatOfPoint> findContours() {
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+        contours.clear();
+        Imgproc.findContours(dilated, contours, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+        return contours;
+    }
+}
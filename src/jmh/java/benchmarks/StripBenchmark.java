@@ -0,0 +1,94 @@
+package benchmarks;
+
+import edu.wpi.first.vision.VisionPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GripPipeline with the per-pixel steps split into strips across the fork-join pool. The
+ * speedup at each resolution is the strips=N score over the strips=1 score. The source's
+ * frames are taken in turn. Setup fails if, for any frame, the mask or the contour count
+ * differs from the single-threaded pipeline's.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StripBenchmark {
+    @Param({"160x120", "320x240", "640x480"})
+    public String resolution;
+
+    @Param("synthetic")
+    public String source;
+
+    @Param({"1", "2", "4"})
+    public int strips;
+
+    private Mat[] frames;
+    private int next;
+    private VisionPipeline pipeline;
+
+    @Setup
+    public void setup() throws Throwable {
+        frames = BenchmarkFrames.loadAll(source, resolution);
+        pipeline = VisionAccess.newPipeline("GripPipeline");
+        VisionAccess.voidMethod(pipeline, "useStrips", int.class).invoke(strips);
+
+        VisionPipeline reference = VisionAccess.newPipeline("GripPipeline");
+        for (Mat frame : frames) {
+            check(reference, frame);
+        }
+    }
+
+    private void check(VisionPipeline reference, Mat frame) {
+        reference.process(frame);
+        pipeline.process(frame);
+        Mat difference = new Mat();
+        Core.compare(VisionAccess.<Mat>call(reference, "cvDilateOutput"),
+                VisionAccess.<Mat>call(pipeline, "cvDilateOutput"), difference, Core.CMP_NE);
+        int mismatches = Core.countNonZero(difference);
+        if (mismatches != 0) {
+            throw new IllegalStateException("striped mask differs at " + mismatches + " pixels");
+        }
+        int expected = VisionAccess.<List<MatOfPoint>>call(reference, "findContoursOutput").size();
+        int found = VisionAccess.<List<MatOfPoint>>call(pipeline, "findContoursOutput").size();
+        if (found != expected) {
+            throw new IllegalStateException("striped pipeline found " + found + " contours, not " + expected);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Mat frame : frames) {
+            frame.release();
+        }
+    }
+
+    /**
+     * Blur, threshold and dilate in strips, then findContours on the whole mask.
+     */
+    @Benchmark
+    public VisionPipeline stripProcess() {
+        pipeline.process(frames[next]);
+        next = (next + 1) % frames.length;
+        return pipeline;
+    }
+}
@@ -0,0 +1,96 @@
+package benchmarks;
+
+import edu.wpi.first.vision.VisionPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cvtColor + inRange against the precomputed lookup table, single and multi-threaded,
+ * taking the source's frames in turn. Setup fails if the two masks differ anywhere in
+ * any frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThresholdBenchmark {
+    @Param({"160x120", "320x240", "640x480"})
+    public String resolution;
+
+    @Param("synthetic")
+    public String source;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Mat[] frames;
+    private int next;
+    private Scalar low;
+    private Scalar high;
+    private MethodHandle lookup;
+    private final Mat hsv = new Mat();
+    private final Mat rangeMask = new Mat();
+    private final Mat lookupMask = new Mat();
+
+    @Setup
+    public void setup() throws Throwable {
+        frames = BenchmarkFrames.loadAll(source, resolution);
+        VisionPipeline pipeline = VisionAccess.newPipeline("GripPipeline");
+        low = VisionAccess.field(pipeline, "hsvThresholdLow");
+        high = VisionAccess.field(pipeline, "hsvThresholdHigh");
+        Object table = VisionAccess.newInstance("HsvLookupTable",
+                new Class<?>[]{Scalar.class, Scalar.class, int.class}, low, high, threads);
+        lookup = VisionAccess.voidMethod(table, "apply", Mat.class, Mat.class);
+
+        Mat difference = new Mat();
+        for (int i = 0; i < frames.length; i++) {
+            Mat frame = frames[i];
+            Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_BGR2HSV);
+            Core.inRange(hsv, low, high, rangeMask);
+            lookup.invokeExact(frame, lookupMask);
+            Core.compare(rangeMask, lookupMask, difference, Core.CMP_NE);
+            int mismatches = Core.countNonZero(difference);
+            if (mismatches != 0) {
+                throw new IllegalStateException("lookup table differs from inRange at " + mismatches
+                        + " pixels in frame " + i);
+            }
+        }
+    }
+
+    private Mat nextFrame() {
+        Mat frame = frames[next];
+        next = (next + 1) % frames.length;
+        return frame;
+    }
+
+    @Benchmark
+    public Mat convertAndRange() {
+        Imgproc.cvtColor(nextFrame(), hsv, Imgproc.COLOR_BGR2HSV);
+        Core.inRange(hsv, low, high, rangeMask);
+        return rangeMask;
+    }
+
+    @Benchmark
+    public Mat lookupThreshold() throws Throwable {
+        lookup.invokeExact(nextFrame(), lookupMask);
+        return lookupMask;
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import edu.wpi.first.vision.VisionPipeline;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Reflective access to the vision classes.
+ *
+ * <p>The application lives in the default package, which code in a named package cannot
+ * import, and JMH refuses to generate benchmarks in the default package. Everything the
+ * benchmarks touch goes through here, once, during setup.
+ */
+final class VisionAccess {
+    private VisionAccess() {
+    }
+
+    static VisionPipeline newPipeline(String className) {
+        try {
+            return (VisionPipeline) Class.forName(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not create " + className, e);
+        }
+    }
+
+    static Object newInstance(String className, Class<?>[] parameterTypes, Object... args) {
+        try {
+            return Class.forName(className).getConstructor(parameterTypes).newInstance(args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not create " + className, e);
+        }
+    }
+
+    /**
+     * A handle to a public void method, bound to the target.
+     */
+    static MethodHandle voidMethod(Object target, String methodName, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.publicLookup()
+                    .findVirtual(target.getClass(), methodName, MethodType.methodType(void.class, parameterTypes))
+                    .bindTo(target);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not find " + methodName, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T call(Object target, String methodName) {
+        try {
+            Method method = target.getClass().getMethod(methodName);
+            return (T) method.invoke(target);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not call " + methodName, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T callStatic(String className, String methodName, Class<?>[] parameterTypes, Object... args) {
+        try {
+            return (T) Class.forName(className).getMethod(methodName, parameterTypes).invoke(null, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not call " + className + "." + methodName, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T field(Object target, String fieldName) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            return (T) field.get(target);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not read " + fieldName, e);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import edu.wpi.cscore.CvSource;
+import edu.wpi.cscore.MjpegServer;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * The processed MJPEG stream for one camera, drawn and sent only while someone watches it.
+ *
+ * <p>With no stream clients connected nothing is drawn or encoded. With a bandwidth budget
+ * the stream moves along a ladder of resolution, frame rate and JPEG quality levels: once a
+ * second a frame is JPEG encoded to measure its size, and the stream steps down a level
+ * when that rate would exceed the budget, or back up when it would use well under half of
+ * it. Below full resolution the frame is downscaled first and annotated at the smaller size.
+ * The budget is per client, as the server sends every client its own copy.
+ */
+public class AnnotatedStream {
+    // resolution scale, fraction of the max fps and fraction of the max quality per level
+    private static final double[][] levels = {
+            {1.0, 1.0, 1.0},
+            {1.0, 1.0, 0.6},
+            {0.5, 1.0, 1.0},
+            {0.5, 0.66, 0.6},
+            {0.25, 0.66, 1.0},
+            {0.25, 0.33, 0.6},
+    };
+    private static final int minQuality = 10;
+    private static final long calibrationPeriodMicros = 1_000_000;
+    private static final double stepUpHeadroom = 0.4;
+
+    private final String name;
+    private final CvSource source;
+    private final MjpegServer server;
+    private final VisionMetrics metrics;
+    private final Scalar color = new Scalar(255, 255, 255);
+    private final double budgetKbps;
+    private final int maxFps;
+    private final int maxQuality;
+
+    private int level = -1;
+    private double scale;
+    private int fps;
+    private int quality;
+    // set by the quality governor on the detection thread
+    private volatile boolean overlay = true;
+    private volatile int fpsDivisor = 1;
+
+    private long lastPutTime = Long.MIN_VALUE / 2;
+    private long lastCalibrationTime = Long.MIN_VALUE / 2;
+
+    private final Mat scaled = MatTracker.newMat();
+    private final Size scaledSize = new Size();
+    private final ArrayList<MatOfPoint> scaledContours = new ArrayList<>();
+    private final MatOfByte encoded = MatTracker.track(new MatOfByte());
+    private final MatOfInt encodeParams = MatTracker.track(new MatOfInt());
+    private final Point topLeft = new Point();
+    private final Point bottomRight = new Point();
+
+    public AnnotatedStream(String name, CvSource source, MjpegServer server, VisionMetrics metrics, VisionConfig config) {
+        this.name = name;
+        this.source = source;
+        this.server = server;
+        this.metrics = metrics;
+        this.budgetKbps = config.streamBandwidthKbps;
+        this.maxFps = Math.max(1, config.streamMaxFps);
+        this.maxQuality = Math.max(minQuality, config.streamQuality);
+        scaledContours.add(MatTracker.track(new MatOfPoint()));
+        setLevel(0);
+    }
+
+    /**
+     * Whether any client is connected to the stream.
+     */
+    public boolean hasClients() {
+        return source.isEnabled();
+    }
+
+    /**
+     * Whether targets are drawn on the stream, or the camera image is sent as it is.
+     */
+    public void setOverlay(boolean overlay) {
+        this.overlay = overlay;
+    }
+
+    /**
+     * Send only one in this many of the frames the current level would send.
+     */
+    public void setFpsDivisor(int fpsDivisor) {
+        this.fpsDivisor = Math.max(1, fpsDivisor);
+    }
+
+    /**
+     * Draw the frame's targets and send it, unless nobody is watching or it is too soon
+     * after the last frame sent for the current frame rate.
+     */
+    public void annotate(Frame frame) {
+        if (!hasClients()) {
+            return;
+        }
+        long now = VisionClock.nowMicros();
+        if (now - lastPutTime < 1_000_000L * fpsDivisor / fps) {
+            return;
+        }
+        lastPutTime = now;
+
+        long start = metrics.start();
+        Mat image = frame.image;
+        if (scale < 1.0) {
+            scaledSize.width = Math.max(1, Math.round(image.cols() * scale));
+            scaledSize.height = Math.max(1, Math.round(image.rows() * scale));
+            Imgproc.resize(image, scaled, scaledSize, 0, 0, Imgproc.INTER_AREA);
+            image = scaled;
+        }
+        if (overlay) {
+            draw(image, frame);
+        }
+        metrics.stop(VisionStage.ANNOTATE, start);
+
+        if (budgetKbps > 0 && now - lastCalibrationTime >= calibrationPeriodMicros) {
+            lastCalibrationTime = now;
+            calibrate(image);
+        }
+
+        start = metrics.start();
+        source.putFrame(image);
+        metrics.stop(VisionStage.PUT_FRAME, start);
+    }
+
+    private void draw(Mat image, Frame frame) {
+        if (frame.hasContour) {
+            if (scale < 1.0) {
+                MatOfPoint contour = scaledContours.get(0);
+                frame.targetContour().convertTo(contour, -1, scale);
+                Imgproc.drawContours(image, scaledContours, 0, color, 1);
+            } else {
+                Imgproc.drawContours(image, frame.targetContours, 0, color, 1);
+            }
+        } else if (frame.hasTarget) {
+            drawBox(image, frame.x, frame.y, frame.width, frame.height);
+        }
+        // the other kept targets, never more than maxTargets boxes however noisy the frame
+        TargetList targets = frame.targets;
+        for (int k = 1; k < targets.count(); k++) {
+            drawBox(image, targets.x(k), targets.y(k), targets.width(k), targets.height(k));
+        }
+    }
+
+    private void drawBox(Mat image, double x, double y, double width, double height) {
+        topLeft.x = x * scale;
+        topLeft.y = y * scale;
+        bottomRight.x = (x + width) * scale - 1;
+        bottomRight.y = (y + height) * scale - 1;
+        Imgproc.rectangle(image, topLeft, bottomRight, color, 1);
+    }
+
+    /**
+     * Measure what this level costs by encoding one frame, and move to the level that fits.
+     */
+    private void calibrate(Mat image) {
+        encodeParams.fromArray(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+        Imgcodecs.imencode(".jpg", image, encoded, encodeParams);
+        // frames actually sent, with the governor's divisor applied
+        double kbps = encoded.total() * 8.0 * fps / fpsDivisor / 1000;
+        if (kbps > budgetKbps && level < levels.length - 1) {
+            setLevel(level + 1);
+        } else if (kbps < budgetKbps * stepUpHeadroom && level > 0) {
+            setLevel(level - 1);
+        } else {
+            return;
+        }
+        System.out.println(String.format(Locale.ROOT,
+                "Stream '%s' measured %.0f kbps against a %.0f kbps budget, now at %.0f%% scale, %d fps, quality %d",
+                name, kbps, budgetKbps, scale * 100, fps / fpsDivisor, quality));
+    }
+
+    private void setLevel(int level) {
+        if (level == this.level) {
+            return;
+        }
+        this.level = level;
+        double[] settings = levels[level];
+        scale = settings[0];
+        fps = Math.max(1, (int) Math.round(maxFps * settings[1]));
+        quality = Math.max(minQuality, (int) Math.round(maxQuality * settings[2]));
+        server.setFPS(fps);
+        server.setCompression(quality);
+    }
+}
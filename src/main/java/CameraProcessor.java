@@ -0,0 +1,172 @@
+import edu.wpi.cscore.CvSink;
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.cameraserver.CameraServer;
+import org.opencv.core.Mat;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Capture, detection and annotation for one camera, each running as its own stage.
+ *
+ * <p>Capture grabs into pooled frames on its own thread. Detection runs the pipeline and
+ * publishes the target as soon as it is found, on a thread owned by the
+ * {@link VisionScheduler}. Annotation draws and streams on a low priority thread, so the
+ * MJPEG encode never delays the next result. Stages hand frames over through
+ * {@link LatestFrameSlot}s, which drop frames a slower stage has not picked up. When every
+ * pooled frame is busy, capture grabs into a scratch buffer and drops the frame there, so
+ * it still waits on the camera rather than spinning.
+ */
+public class CameraProcessor {
+    // capture, detection and annotation each hold one frame, plus one waiting in each slot
+    private static final int framePoolSize = 5;
+    private static final long takeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final String name;
+    private final CvSink sink;
+    private final PipelineWrapper pipeline;
+    private final Consumer<Frame> publisher;
+    private final Consumer<Frame> annotator;
+    private final FramePool framePool = new FramePool(framePoolSize);
+    private final LatestFrameSlot detectSlot = new LatestFrameSlot();
+    private final LatestFrameSlot annotateSlot = new LatestFrameSlot();
+    private final VisionMetrics metrics;
+    private final Mat scratch = MatTracker.newMat();
+    private volatile boolean running;
+    private boolean primary;
+    private Runnable detectionSignal = () -> { };
+    private long nextFrameId;
+    private long startNanos;
+    private boolean firstResultLogged;
+
+    public CameraProcessor(String name, VideoSource camera, PipelineWrapper pipeline, VisionMetrics metrics,
+                           Consumer<Frame> publisher, Consumer<Frame> annotator) {
+        this.name = name;
+        this.sink = CameraServer.getInstance().getVideo(camera);
+        this.pipeline = pipeline;
+        this.metrics = metrics;
+        this.publisher = publisher;
+        this.annotator = annotator;
+        pipeline.setMetrics(metrics);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FramePool getFramePool() {
+        return framePool;
+    }
+
+    public VisionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Start the capture and annotation threads and hand detection to the scheduler.
+     */
+    public void start(VisionScheduler scheduler, boolean primary) {
+        running = true;
+        startNanos = System.nanoTime();
+        this.primary = primary;
+        detectionSignal = scheduler.start(name, this::detectOnce, primary);
+        startThread("Capture " + name, this::captureLoop, Thread.NORM_PRIORITY + 1);
+        startThread("Annotate " + name, this::annotateLoop, Thread.MIN_PRIORITY);
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    private void startThread(String threadName, Runnable loop, int priority) {
+        Thread thread = new Thread(loop, threadName);
+        thread.setDaemon(true);
+        thread.setPriority(priority);
+        thread.start();
+    }
+
+    private void captureLoop() {
+        while (running) {
+            Frame frame = framePool.lease();
+            if (frame == null) {
+                // every buffer is busy downstream; still take the camera's frame, which paces
+                // this loop, and drop it
+                if (sink.grabFrame(scratch) != 0) {
+                    metrics.frameDropped();
+                }
+                continue;
+            }
+            long captureTime = sink.grabFrame(frame.image);
+            if (captureTime == 0) {
+                System.out.println("Capture on '" + name + "' failed: " + sink.getError());
+                framePool.release(frame);
+                continue;
+            }
+            frame.id = nextFrameId++;
+            frame.captureTime = captureTime;
+            if (metrics.isEnabled()) {
+                metrics.record(VisionStage.GRAB, VisionClock.ageMicros(captureTime));
+            }
+            handOff(detectSlot, frame);
+            detectionSignal.run();
+        }
+    }
+
+    /**
+     * Detect and publish at most one frame. Runs on a scheduler thread; only the primary
+     * camera's own thread waits for a frame, a pool worker takes one if there is one.
+     */
+    private void detectOnce() {
+        Frame frame = primary ? detectSlot.take(takeTimeoutNanos) : detectSlot.poll();
+        if (frame == null) {
+            return;
+        }
+        try {
+            pipeline.process(frame);
+            publisher.accept(frame);
+            metrics.frameProcessed();
+            if (!firstResultLogged) {
+                logFirstResult();
+            }
+        } catch (RuntimeException e) {
+            framePool.release(frame);
+            throw e;
+        }
+        handOff(annotateSlot, frame);
+    }
+
+    /**
+     * Log how long the first result took, from JVM launch and from starting this camera.
+     */
+    private void logFirstResult() {
+        firstResultLogged = true;
+        System.out.println("First result on '" + name + "' "
+                + ManagementFactory.getRuntimeMXBean().getUptime() + " ms after launch, "
+                + (System.nanoTime() - startNanos) / 1_000_000 + " ms after the camera started");
+    }
+
+    private void annotateLoop() {
+        while (running) {
+            Frame frame = annotateSlot.take(takeTimeoutNanos);
+            if (frame == null) {
+                continue;
+            }
+            try {
+                annotator.accept(frame);
+            } catch (RuntimeException e) {
+                System.out.println("Annotation on '" + name + "' failed: " + e);
+            } finally {
+                framePool.release(frame);
+            }
+        }
+    }
+
+    private void handOff(LatestFrameSlot slot, Frame frame) {
+        Frame stale = slot.offer(frame);
+        if (stale != null) {
+            metrics.frameDropped();
+            framePool.release(stale);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Target candidates backed by connectedComponentsWithStats output.
+ *
+ * <p>Bounding boxes, pixel areas and centroids come straight out of the stats as primitive
+ * arrays, so no per-blob objects are made. An outline is only traced when asked for, from
+ * the label image inside that one blob's bounding box, and the last one traced is kept.
+ *
+ * <p>Candidate i is component label i + 1, label 0 being the background. Areas are pixel
+ * counts, which run slightly larger than the polygon area of the matching contour.
+ */
+public class ComponentCandidates implements TargetCandidates {
+    private static final int notMeasured = -1;
+    private static final int statColumns = 5;
+
+    private int count;
+    private int[] stats = new int[0];
+    private double[] centroids = new double[0];
+    private double[] hullAreas = new double[0];
+    private Mat labels;
+
+    private final ConvexHullArea hullArea = new ConvexHullArea();
+    private final Mat blobMask = MatTracker.newMat();
+    private final Mat outlineHierarchy = MatTracker.newMat();
+    private final List<MatOfPoint> outlines = new ArrayList<>();
+    private final MatOfPoint contour = MatTracker.track(new MatOfPoint());
+    private final Rect bounds = new Rect();
+    private final Point offset = new Point();
+    private final Scalar label = new Scalar(0);
+    private int contourIndex = notMeasured;
+
+    /**
+     * Start measuring a new frame's components.
+     *
+     * @param labelCount number of labels, including the background
+     */
+    public void reset(Mat labels, Mat stats, Mat centroids, int labelCount) {
+        this.labels = labels;
+        count = Math.max(0, labelCount - 1);
+        if (this.stats.length < labelCount * statColumns) {
+            int capacity = Math.max(labelCount, this.stats.length / statColumns * 2);
+            this.stats = new int[capacity * statColumns];
+            this.centroids = new double[capacity * 2];
+            hullAreas = new double[capacity];
+        }
+        if (labelCount > 0) {
+            stats.get(0, 0, this.stats);
+            centroids.get(0, 0, this.centroids);
+        }
+        Arrays.fill(hullAreas, 0, count, notMeasured);
+        contourIndex = notMeasured;
+    }
+
+    public void release() {
+        hullArea.release();
+        MatTracker.release(blobMask);
+        MatTracker.release(outlineHierarchy);
+        MatTracker.release(contour);
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public int x(int i) {
+        return stat(i, Imgproc.CC_STAT_LEFT);
+    }
+
+    @Override
+    public int y(int i) {
+        return stat(i, Imgproc.CC_STAT_TOP);
+    }
+
+    @Override
+    public int width(int i) {
+        return stat(i, Imgproc.CC_STAT_WIDTH);
+    }
+
+    @Override
+    public int height(int i) {
+        return stat(i, Imgproc.CC_STAT_HEIGHT);
+    }
+
+    @Override
+    public double area(int i) {
+        return stat(i, Imgproc.CC_STAT_AREA);
+    }
+
+    public double centroidX(int i) {
+        return centroids[(i + 1) * 2];
+    }
+
+    public double centroidY(int i) {
+        return centroids[(i + 1) * 2 + 1];
+    }
+
+    private int stat(int i, int field) {
+        return stats[(i + 1) * statColumns + field];
+    }
+
+    @Override
+    public double hullArea(int i) {
+        if (hullAreas[i] == notMeasured) {
+            MatOfPoint outline = contour(i);
+            hullAreas[i] = outline.empty() ? 0 : hullArea.measure(outline);
+        }
+        return hullAreas[i];
+    }
+
+    /**
+     * Trace the outline of one component. Empty if it could not be traced.
+     */
+    @Override
+    public MatOfPoint contour(int i) {
+        if (contourIndex == i) {
+            return contour;
+        }
+        bounds.x = x(i);
+        bounds.y = y(i);
+        bounds.width = width(i);
+        bounds.height = height(i);
+        offset.x = bounds.x;
+        offset.y = bounds.y;
+        label.val[0] = i + 1;
+
+        Mat region = labels.submat(bounds);
+        try {
+            // a neighbouring blob can reach into the bounding box, so match this label only
+            Core.compare(region, label, blobMask, Core.CMP_EQ);
+        } finally {
+            region.release();
+        }
+        Imgproc.findContours(blobMask, outlines, outlineHierarchy, Imgproc.RETR_EXTERNAL,
+                Imgproc.CHAIN_APPROX_SIMPLE, offset);
+        MatTracker.trackAll(outlines);
+
+        double largestArea = -1;
+        for (MatOfPoint outline : outlines) {
+            double area = Imgproc.contourArea(outline);
+            if (area > largestArea) {
+                // copyTo reuses the buffer when it is big enough
+                outline.copyTo(contour);
+                largestArea = area;
+            }
+        }
+        if (outlines.isEmpty()) {
+            // empty without giving the buffer up
+            contour.create(0, 1, CvType.CV_32SC2);
+        }
+        MatTracker.releaseAll(outlines);
+        contourIndex = i;
+        return contour;
+    }
+}
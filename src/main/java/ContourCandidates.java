@@ -0,0 +1,97 @@
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Target candidates backed by findContours output, measured lazily and cached per frame.
+ */
+public class ContourCandidates implements TargetCandidates {
+    private static final int notMeasured = -1;
+
+    private List<MatOfPoint> contours;
+    private int[] bounds = new int[0];
+    private double[] areas = new double[0];
+    private double[] hullAreas = new double[0];
+    private final ConvexHullArea hullArea = new ConvexHullArea();
+
+    /**
+     * Start measuring a new frame's contours.
+     */
+    public void reset(List<MatOfPoint> contours) {
+        this.contours = contours;
+        int count = contours.size();
+        if (areas.length < count) {
+            int capacity = Math.max(count, areas.length * 2);
+            bounds = new int[capacity * 4];
+            areas = new double[capacity];
+            hullAreas = new double[capacity];
+        }
+        Arrays.fill(bounds, 0, count * 4, notMeasured);
+        Arrays.fill(areas, 0, count, notMeasured);
+        Arrays.fill(hullAreas, 0, count, notMeasured);
+    }
+
+    public void release() {
+        hullArea.release();
+    }
+
+    @Override
+    public MatOfPoint contour(int i) {
+        return contours.get(i);
+    }
+
+    @Override
+    public int count() {
+        return contours.size();
+    }
+
+    @Override
+    public int x(int i) {
+        return bound(i, 0);
+    }
+
+    @Override
+    public int y(int i) {
+        return bound(i, 1);
+    }
+
+    @Override
+    public int width(int i) {
+        return bound(i, 2);
+    }
+
+    @Override
+    public int height(int i) {
+        return bound(i, 3);
+    }
+
+    private int bound(int i, int field) {
+        if (bounds[i * 4 + 2] == notMeasured) {
+            Rect rect = Imgproc.boundingRect(contours.get(i));
+            bounds[i * 4] = rect.x;
+            bounds[i * 4 + 1] = rect.y;
+            bounds[i * 4 + 2] = rect.width;
+            bounds[i * 4 + 3] = rect.height;
+        }
+        return bounds[i * 4 + field];
+    }
+
+    @Override
+    public double area(int i) {
+        if (areas[i] == notMeasured) {
+            areas[i] = Imgproc.contourArea(contours.get(i));
+        }
+        return areas[i];
+    }
+
+    @Override
+    public double hullArea(int i) {
+        if (hullAreas[i] == notMeasured) {
+            hullAreas[i] = hullArea.measure(contours.get(i));
+        }
+        return hullAreas[i];
+    }
+}
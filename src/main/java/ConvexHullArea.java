@@ -0,0 +1,41 @@
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Measures convex hull areas, reusing its buffers from one contour to the next.
+ */
+public class ConvexHullArea {
+    private final MatOfInt hullIndices = MatTracker.track(new MatOfInt());
+    private int[] points = new int[0];
+    private int[] hull = new int[0];
+
+    public void release() {
+        MatTracker.release(hullIndices);
+    }
+
+    /**
+     * Shoelace area of the convex hull, walking the hull indices over the contour points.
+     */
+    public double measure(MatOfPoint contour) {
+        Imgproc.convexHull(contour, hullIndices);
+        int pointCount = (int) contour.total();
+        int hullCount = (int) hullIndices.total();
+        if (points.length < pointCount * 2) {
+            points = new int[pointCount * 2];
+        }
+        if (hull.length < hullCount) {
+            hull = new int[hullCount];
+        }
+        contour.get(0, 0, points);
+        hullIndices.get(0, 0, hull);
+
+        long twiceArea = 0;
+        for (int k = 0; k < hullCount; k++) {
+            int a = hull[k] * 2;
+            int b = hull[(k + 1) % hullCount] * 2;
+            twiceArea += (long) points[a] * points[b + 1] - (long) points[b] * points[a + 1];
+        }
+        return Math.abs(twiceArea) / 2.0;
+    }
+}
@@ -0,0 +1,93 @@
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+
+import java.util.ArrayList;
+
+/**
+ * A pooled camera frame and the target found in it.
+ *
+ * <p>Frames are owned by a {@link FramePool} and passed between the capture, detection and
+ * annotation stages. The image and contour buffers are reused from frame to frame.
+ */
+@SuppressWarnings("MemberName")
+public class Frame {
+    public final Mat image = MatTracker.newMat();
+
+    // single-element list so the target contour can be drawn without building a list per frame
+    public final ArrayList<MatOfPoint> targetContours = new ArrayList<>();
+
+    public long id;
+    public long captureTime; // microseconds on wpi::Now, as returned by CvSink.grabFrame
+
+    public boolean hasTarget;
+    public boolean hasContour; // false when only the bounding box was kept
+    public boolean coasting; // the target is the tracker's prediction, with no measurement this frame
+    public boolean reused; // the frame was not processed, the target is the last processed frame's
+    // the frame the target was measured on: this one, or the last processed one when reused
+    public long resultId;
+    public long resultCaptureTime;
+    public double area;
+    public double x;
+    public double y;
+    public double width;
+    public double height;
+
+    // the best few targets, best first; the first one is the target above
+    public final TargetList targets = new TargetList(1);
+
+    public Frame() {
+        targetContours.add(MatTracker.track(new MatOfPoint()));
+    }
+
+    /**
+     * Free the frame's native buffers. The frame must not be used afterwards.
+     */
+    public void release() {
+        MatTracker.release(image);
+        MatTracker.release(targetContour());
+    }
+
+    public MatOfPoint targetContour() {
+        return targetContours.get(0);
+    }
+
+    /**
+     * Copy the best target and its outline, but not the rest of the target list.
+     */
+    public void copyTargetFrom(Frame other) {
+        hasTarget = other.hasTarget;
+        hasContour = other.hasContour;
+        area = other.area;
+        x = other.x;
+        y = other.y;
+        width = other.width;
+        height = other.height;
+        if (hasContour) {
+            other.targetContour().copyTo(targetContour());
+        }
+    }
+
+    /**
+     * Scale the target and the target list to another resolution. The outline is left as is.
+     */
+    public void scaleTargets(double factor) {
+        area *= factor * factor;
+        x *= factor;
+        y *= factor;
+        width *= factor;
+        height *= factor;
+        targets.scale(factor);
+    }
+
+    public void clearTarget() {
+        hasTarget = false;
+        hasContour = false;
+        coasting = false;
+        targets.clear();
+        area = 0;
+        x = 0;
+        y = 0;
+        width = 0;
+        height = 0;
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed ring of preallocated frame buffers.
+ *
+ * <p>Frames are leased, filled with {@code copyTo} or {@code grabFrame} and returned. Once
+ * each buffer has been sized by its first frame, steady-state processing does no native
+ * allocation.
+ */
+public class FramePool {
+    private final int size;
+    private final ArrayBlockingQueue<Frame> free;
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private final AtomicInteger exhausted = new AtomicInteger();
+
+    public FramePool(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("frame pool size must be at least 1");
+        }
+        this.size = size;
+        this.free = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            free.add(new Frame());
+        }
+    }
+
+    /**
+     * Take a frame out of the pool, or null if every frame is leased.
+     */
+    public Frame lease() {
+        Frame frame = free.poll();
+        if (frame == null) {
+            exhausted.incrementAndGet();
+            return null;
+        }
+        int leased = inUse.incrementAndGet();
+        highWaterMark.accumulateAndGet(leased, Math::max);
+        return frame;
+    }
+
+    /**
+     * Give a leased frame back to the pool.
+     */
+    public void release(Frame frame) {
+        if (frame == null) {
+            return;
+        }
+        if (!free.offer(frame)) {
+            throw new IllegalStateException("released a frame that does not belong to this pool");
+        }
+        inUse.decrementAndGet();
+    }
+
+    /**
+     * Free the native buffers of every frame not leased out. For shutting the pool down.
+     */
+    public void releaseBuffers() {
+        for (Frame frame : free) {
+            frame.release();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int inUse() {
+        return inUse.get();
+    }
+
+    public int highWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * Number of times lease() found the pool empty.
+     */
+    public int exhaustedCount() {
+        return exhausted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FramePool[size=" + size + ", inUse=" + inUse() + ", highWaterMark=" + highWaterMark()
+                + ", exhausted=" + exhaustedCount() + "]";
+    }
+}
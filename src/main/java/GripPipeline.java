@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.HashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import edu.wpi.first.vision.VisionPipeline;
 import org.opencv.core.*;
@@ -26,45 +28,306 @@ public class GripPipeline implements VisionPipeline {
 
 	//Outputs
 	private Mat blurOutput = new Mat();
+	private Mat hsvOutput = new Mat();
 	private Mat hsvThresholdOutput = new Mat();
 	private Mat cvDilateOutput = new Mat();
 	private ArrayList<MatOfPoint> findContoursOutput = new ArrayList<MatOfPoint>();
+	private final Mat componentLabelsOutput = MatTracker.newMat();
+	private final Mat componentStatsOutput = MatTracker.newMat();
+	private final Mat componentCentroidsOutput = MatTracker.newMat();
+	private int componentCount;
+
+	//Backing buffers. The outputs are views into these sized to the current input, so
+	//inputs of varying size (such as a tracking region) do not reallocate every frame.
+	private final Mat blurBuffer = MatTracker.newMat();
+	private final Mat hsvBuffer = MatTracker.newMat();
+	private final Mat hsvThresholdBuffer = MatTracker.newMat();
+	private final Mat cvDilateBuffer = MatTracker.newMat();
+	private int outputRows = -1;
+	private int outputCols = -1;
+	private int bufferRows;
+	private int bufferCols;
+
+	//Parameters, taken from the compiled plan once so that process() does not allocate in steady state
+	private final PipelinePlan plan;
+	private final BlurType blurType;
+	private final double blurRadius;
+	private final Size blurKernelSize = new Size();
+	private final Scalar hsvThresholdLow;
+	private final Scalar hsvThresholdHigh;
+	private final Mat cvDilateKernel = MatTracker.newMat();
+	private final Point cvDilateAnchor = new Point(-1, -1);
+	private final double cvDilateIterations;
+	// isolated, so a view's neighbouring rows in the buffer are never read as image
+	private final int cvDilateBordertype = Core.BORDER_CONSTANT | Core.BORDER_ISOLATED;
+	private final Scalar cvDilateBordervalue = new Scalar(-1);
+	private final boolean findContoursExternalOnly;
+	private final Mat findContoursHierarchy = MatTracker.newMat();
+	private final boolean useComponents;
+	private static final int minStripRows = 16;
+	private Strip[] strips = new Strip[0];
+
+	private HsvLookupTable hsvLookupTable;
+
+	private VisionMetrics metrics = VisionMetrics.disabled();
 
 	static {
 		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
 	}
 
+	/**
+	 * The pipeline as GRIP generated it.
+	 */
+	public GripPipeline() {
+		this(PipelinePlan.grip());
+	}
+
+	public GripPipeline(PipelinePlan plan) {
+		this.plan = plan;
+		blurType = plan.getBlurType();
+		blurRadius = plan.getBlurRadius();
+		hsvThresholdLow = plan.getHsvLow();
+		hsvThresholdHigh = plan.getHsvHigh();
+		cvDilateIterations = plan.getDilateIterations();
+		findContoursExternalOnly = plan.isExternalOnly();
+		useComponents = plan.usesConnectedComponents();
+	}
+
+	public PipelinePlan getPlan() {
+		return plan;
+	}
+
 	/**
 	 * This is the primary method that runs the entire pipeline and updates the outputs.
 	 */
 	@Override	public void process(Mat source0) {
+		sizeOutputs(source0);
+
+		if (usesStrips(source0)) {
+			// Steps Blur0, HSV_Threshold0 and CV_dilate0 strip by strip, in parallel:
+			long start = metrics.start();
+			Mat blobInput = cvDilateIterations > 0 ? cvDilateOutput : hsvThresholdOutput;
+			processStrips(source0, blobInput);
+			metrics.stop(VisionStage.STRIPS, start);
+			extractBlobs(blobInput);
+			return;
+		}
+
 		// Step Blur0:
+		long start = metrics.start();
 		Mat blurInput = source0;
-		BlurType blurType = BlurType.get("Median Filter");
-		double blurRadius = 0.0;
-		blur(blurInput, blurType, blurRadius, blurOutput);
-
-		// Step HSV_Threshold0:
-		Mat hsvThresholdInput = blurOutput;
-		double[] hsvThresholdHue = {59.89208633093524, 92.12121212121212};
-		double[] hsvThresholdSaturation = {158.22841726618705, 255.0};
-		double[] hsvThresholdValue = {91.72661870503596, 255.0};
-		hsvThreshold(hsvThresholdInput, hsvThresholdHue, hsvThresholdSaturation, hsvThresholdValue, hsvThresholdOutput);
-
-		// Step CV_dilate0:
-		Mat cvDilateSrc = hsvThresholdOutput;
-		Mat cvDilateKernel = new Mat();
-		Point cvDilateAnchor = new Point(-1, -1);
-		double cvDilateIterations = 1.0;
-		int cvDilateBordertype = Core.BORDER_CONSTANT;
-		Scalar cvDilateBordervalue = new Scalar(-1);
-		cvDilate(cvDilateSrc, cvDilateKernel, cvDilateAnchor, cvDilateIterations, cvDilateBordertype, cvDilateBordervalue, cvDilateOutput);
+		Mat hsvThresholdInput;
+		if (!plan.hasBlur()) {
+			// a zero radius blur is an identity copy, so feed the source straight through
+			hsvThresholdInput = blurInput;
+		}
+		else {
+			blur(blurInput, blurType, blurRadius, blurOutput, blurKernelSize);
+			hsvThresholdInput = blurOutput;
+			metrics.stop(VisionStage.BLUR, start);
+		}
+
+		Mat blobInput;
+		if (fusesThresholdDilate()) {
+			// Step HSV_Threshold0 and CV_dilate0 in one pass:
+			start = metrics.start();
+			hsvLookupTable.applyDilated(hsvThresholdInput, cvDilateOutput);
+			metrics.stop(VisionStage.THRESHOLD_DILATE, start);
+			blobInput = cvDilateOutput;
+		}
+		else {
+			// Step HSV_Threshold0:
+			start = metrics.start();
+			hsvThreshold(hsvThresholdInput, hsvThresholdLow, hsvThresholdHigh, hsvOutput, hsvThresholdOutput);
+			metrics.stop(VisionStage.HSV_THRESHOLD, start);
+			blobInput = hsvThresholdOutput;
+
+			if (cvDilateIterations > 0) {
+				// Step CV_dilate0:
+				start = metrics.start();
+				Mat cvDilateSrc = hsvThresholdOutput;
+				cvDilate(cvDilateSrc, cvDilateKernel, cvDilateAnchor, cvDilateIterations, cvDilateBordertype, cvDilateBordervalue, cvDilateOutput);
+				metrics.stop(VisionStage.DILATE, start);
+				blobInput = cvDilateOutput;
+			}
+		}
+
+		extractBlobs(blobInput);
+	}
+
+	private void extractBlobs(Mat blobInput) {
+		long start;
+		if (useComponents) {
+			// Step Connected_Components0:
+			start = metrics.start();
+			findComponents(blobInput);
+			metrics.stop(VisionStage.CONNECTED_COMPONENTS, start);
+			return;
+		}
 
 		// Step Find_Contours0:
-		Mat findContoursInput = cvDilateOutput;
-		boolean findContoursExternalOnly = false;
+		start = metrics.start();
+		Mat findContoursInput = blobInput;
 		findContours(findContoursInput, findContoursExternalOnly, findContoursOutput);
+		metrics.stop(VisionStage.FIND_CONTOURS, start);
+	}
+
+	/**
+	 * Run blur, threshold and dilate on horizontal strips of the frame across the
+	 * fork-join pool, each strip reading enough rows either side that its rows come out
+	 * exactly as they would from the whole frame, and write them into the mask.
+	 */
+	private void processStrips(Mat source, Mat mask) {
+		int rows = source.rows();
+		int halo = stripHalo();
+		for (int i = 0; i < strips.length; i++) {
+			int startRow = (int) ((long) rows * i / strips.length);
+			int endRow = (int) ((long) rows * (i + 1) / strips.length);
+			strips[i].reinitialize();
+			strips[i].set(source, mask, startRow, endRow, halo);
+		}
+		ForkJoinTask.invokeAll(strips);
+	}
+
+	/**
+	 * How many rows either side of a strip reach into it through the blur and the dilate.
+	 */
+	private int stripHalo() {
+		int halo = 0;
+		if (plan.hasBlur()) {
+			int radius = (int) (blurRadius + 0.5);
+			switch (blurType) {
+				case GAUSSIAN:
+					halo = 3 * radius;
+					break;
+				case BILATERAL:
+					// bilateralFilter derives its diameter from sigmaSpace * 1.5
+					halo = (int) Math.ceil(blurRadius * 1.5) + 1;
+					break;
+				default:
+					halo = radius;
+					break;
+			}
+		}
+		// the dilate kernel is 3x3, one row per iteration
+		return halo + (int) cvDilateIterations;
+	}
+
+	private boolean usesStrips(Mat source) {
+		// the lookup table splits its own work, and thin regions are not worth splitting
+		return strips.length > 1 && !usesLookupTable() && source.rows() >= strips.length * minStripRows;
+	}
+
+	/**
+	 * Split blur, threshold and dilate across this many strips of each frame, run on the
+	 * common fork-join pool. Blobs are still extracted from the whole mask, so a blob
+	 * crossing a strip boundary is found whole. Not used with the lookup table, which
+	 * splits its own work.
+	 * @param count number of strips, 1 for single-threaded
+	 */
+	public void useStrips(int count) {
+		for (Strip strip : strips) {
+			strip.release();
+		}
+		strips = new Strip[count > 1 ? count : 0];
+		for (int i = 0; i < strips.length; i++) {
+			strips[i] = new Strip();
+		}
+	}
+
+	/**
+	 * Point the outputs at regions of the backing buffers matching the input size, growing
+	 * the buffers only when the input is larger than anything seen so far. Buffers for steps
+	 * the plan does not run are never allocated.
+	 */
+	private void sizeOutputs(Mat source) {
+		int rows = source.rows();
+		int cols = source.cols();
+		if (rows == outputRows && cols == outputCols) {
+			return;
+		}
+		bufferRows = Math.max(rows, bufferRows);
+		bufferCols = Math.max(cols, bufferCols);
+		if (plan.hasBlur()) {
+			blurOutput = view(blurBuffer, blurOutput, rows, cols, source.type());
+		}
+		boolean fused = fusesThresholdDilate();
+		if (!fused && !usesLookupTable()) {
+			hsvOutput = view(hsvBuffer, hsvOutput, rows, cols, CvType.CV_8UC3);
+		}
+		if (!fused) {
+			hsvThresholdOutput = view(hsvThresholdBuffer, hsvThresholdOutput, rows, cols, CvType.CV_8UC1);
+		}
+		if (fused || cvDilateIterations > 0) {
+			cvDilateOutput = view(cvDilateBuffer, cvDilateOutput, rows, cols, CvType.CV_8UC1);
+		}
+		outputRows = rows;
+		outputCols = cols;
+	}
+
+	private Mat view(Mat buffer, Mat previous, int rows, int cols, int type) {
+		if (buffer.rows() < bufferRows || buffer.cols() < bufferCols || buffer.type() != type) {
+			buffer.create(bufferRows, bufferCols, type);
+		}
+		MatTracker.release(previous);
+		return buffer.submat(0, rows, 0, cols);
+	}
+
+	private boolean usesLookupTable() {
+		return hsvLookupTable != null && hsvLookupTable.matches(hsvThresholdLow, hsvThresholdHigh);
+	}
+
+	private boolean fusesThresholdDilate() {
+		return plan.fusesThresholdDilate() && usesLookupTable();
+	}
+
+	/**
+	 * Threshold through a precomputed colour lookup table instead of cvtColor and inRange.
+	 * Builds the table, which takes a while.
+	 * @param threads number of strips to split each frame across, 1 for single-threaded
+	 */
+	public void useLookupTable(int threads) {
+		hsvLookupTable = new HsvLookupTable(hsvThresholdLow, hsvThresholdHigh, threads);
+		// which buffers are needed depends on the table
+		outputRows = -1;
+		outputCols = -1;
+	}
+
+	/**
+	 * Whether blobs are extracted with connected components instead of findContours. The
+	 * outputs are then the label image and the per-component stats and centroids, and
+	 * findContoursOutput stays empty.
+	 */
+	public boolean usesConnectedComponents() {
+		return useComponents;
+	}
 
+	/**
+	 * Free every native buffer now. The pipeline must not be used afterwards.
+	 */
+	public void release() {
+		MatTracker.releaseAll(findContoursOutput);
+		MatTracker.release(blurOutput);
+		MatTracker.release(hsvOutput);
+		MatTracker.release(hsvThresholdOutput);
+		MatTracker.release(cvDilateOutput);
+		MatTracker.release(blurBuffer);
+		MatTracker.release(hsvBuffer);
+		MatTracker.release(hsvThresholdBuffer);
+		MatTracker.release(cvDilateBuffer);
+		MatTracker.release(componentLabelsOutput);
+		MatTracker.release(componentStatsOutput);
+		MatTracker.release(componentCentroidsOutput);
+		MatTracker.release(cvDilateKernel);
+		MatTracker.release(findContoursHierarchy);
+		useStrips(1);
+	}
+
+	/**
+	 * Time each step into the given metrics.
+	 */
+	public void setMetrics(VisionMetrics metrics) {
+		this.metrics = metrics;
 	}
 
 	/**
@@ -77,6 +340,7 @@ public class GripPipeline implements VisionPipeline {
 
 	/**
 	 * This method is a generated getter for the output of a HSV_Threshold.
+	 * Not written when the threshold is fused with the dilate.
 	 * @return Mat output from HSV_Threshold.
 	 */
 	public Mat hsvThresholdOutput() {
@@ -85,6 +349,7 @@ public class GripPipeline implements VisionPipeline {
 
 	/**
 	 * This method is a generated getter for the output of a CV_dilate.
+	 * Not written when the plan has no dilate.
 	 * @return Mat output from CV_dilate.
 	 */
 	public Mat cvDilateOutput() {
@@ -99,6 +364,34 @@ public class GripPipeline implements VisionPipeline {
 		return findContoursOutput;
 	}
 
+	/**
+	 * The label image from connected components, one CV_32S label per pixel.
+	 */
+	public Mat componentLabelsOutput() {
+		return componentLabelsOutput;
+	}
+
+	/**
+	 * Per-label left, top, width, height and area, in CC_STAT order. Row 0 is background.
+	 */
+	public Mat componentStatsOutput() {
+		return componentStatsOutput;
+	}
+
+	/**
+	 * Per-label centroid x and y. Row 0 is background.
+	 */
+	public Mat componentCentroidsOutput() {
+		return componentCentroidsOutput;
+	}
+
+	/**
+	 * Number of labels, including the background label 0.
+	 */
+	public int componentCount() {
+		return componentCount;
+	}
+
 
 	/**
 	 * An indication of which type of filter to use for a blur.
@@ -129,6 +422,13 @@ public class GripPipeline implements VisionPipeline {
 			}
 		}
 
+		/**
+		 * Whether a blur of this type and radius leaves the image unchanged.
+		 */
+		public boolean isNoOp(double doubleRadius) {
+			return this != BILATERAL && (int)(doubleRadius + 0.5) == 0;
+		}
+
 		@Override
 		public String toString() {
 			return this.label;
@@ -142,18 +442,20 @@ public class GripPipeline implements VisionPipeline {
 	 * @param doubleRadius The radius for the blur.
 	 * @param output The image in which to store the output.
 	 */
-	private void blur(Mat input, BlurType type, double doubleRadius,
-		Mat output) {
+	private static void blur(Mat input, BlurType type, double doubleRadius,
+		Mat output, Size blurKernelSize) {
 		int radius = (int)(doubleRadius + 0.5);
 		int kernelSize;
 		switch(type){
 			case BOX:
 				kernelSize = 2 * radius + 1;
-				Imgproc.blur(input, output, new Size(kernelSize, kernelSize));
+				blurKernelSize.width = blurKernelSize.height = kernelSize;
+				Imgproc.blur(input, output, blurKernelSize);
 				break;
 			case GAUSSIAN:
 				kernelSize = 6 * radius + 1;
-				Imgproc.GaussianBlur(input,output, new Size(kernelSize, kernelSize), radius);
+				blurKernelSize.width = blurKernelSize.height = kernelSize;
+				Imgproc.GaussianBlur(input,output, blurKernelSize, radius);
 				break;
 			case MEDIAN:
 				kernelSize = 2 * radius + 1;
@@ -169,15 +471,17 @@ public class GripPipeline implements VisionPipeline {
 	 * Segment an image based on hue, saturation, and value ranges.
 	 *
 	 * @param input The image on which to perform the HSL threshold.
-	 * @param hue The min and max hue
-	 * @param sat The min and max saturation
-	 * @param val The min and max value
+	 * @param low The min hue, saturation and value
+	 * @param high The max hue, saturation and value
+	 * @param hsv Scratch image for the HSV conversion
 	 */
-	private void hsvThreshold(Mat input, double[] hue, double[] sat, double[] val,
-	    Mat out) {
-		Imgproc.cvtColor(input, out, Imgproc.COLOR_BGR2HSV);
-		Core.inRange(out, new Scalar(hue[0], sat[0], val[0]),
-			new Scalar(hue[1], sat[1], val[1]), out);
+	private void hsvThreshold(Mat input, Scalar low, Scalar high, Mat hsv, Mat out) {
+		if (hsvLookupTable != null && hsvLookupTable.matches(low, high)) {
+			hsvLookupTable.apply(input, out);
+			return;
+		}
+		Imgproc.cvtColor(input, hsv, Imgproc.COLOR_BGR2HSV);
+		Core.inRange(hsv, low, high, out);
 	}
 
 	/**
@@ -193,7 +497,7 @@ public class GripPipeline implements VisionPipeline {
 	private void cvDilate(Mat src, Mat kernel, Point anchor, double iterations,
 	int borderType, Scalar borderValue, Mat dst) {
 		if (kernel == null) {
-			kernel = new Mat();
+			kernel = cvDilateKernel;
 		}
 		if (anchor == null) {
 			anchor = new Point(-1,-1);
@@ -210,8 +514,8 @@ public class GripPipeline implements VisionPipeline {
 	 */
 	private void findContours(Mat input, boolean externalOnly,
 		List<MatOfPoint> contours) {
-		Mat hierarchy = new Mat();
-		contours.clear();
+		// free last frame's contours now rather than waiting for the finalizer
+		MatTracker.releaseAll(contours);
 		int mode;
 		if (externalOnly) {
 			mode = Imgproc.RETR_EXTERNAL;
@@ -220,11 +524,78 @@ public class GripPipeline implements VisionPipeline {
 			mode = Imgproc.RETR_LIST;
 		}
 		int method = Imgproc.CHAIN_APPROX_SIMPLE;
-		Imgproc.findContours(input, contours, hierarchy, mode, method);
+		Imgproc.findContours(input, contours, findContoursHierarchy, mode, method);
+		MatTracker.trackAll(contours);
+	}
+
+	/**
+	 * Label 8-connected blobs and measure each one's bounding box, area and centroid.
+	 * @param input The binary image to label.
+	 */
+	private void findComponents(Mat input) {
+		MatTracker.releaseAll(findContoursOutput);
+		componentCount = Imgproc.connectedComponentsWithStats(input, componentLabelsOutput,
+			componentStatsOutput, componentCentroidsOutput, 8, CvType.CV_32S);
 	}
 
+	/**
+	 * One horizontal strip of the per-pixel steps, with its own scratch images.
+	 */
+	private final class Strip extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 
+		private final Mat blurred = MatTracker.newMat();
+		private final Mat hsv = MatTracker.newMat();
+		private final Mat threshold = MatTracker.newMat();
+		private final Mat dilated = MatTracker.newMat();
+		private final Size kernelSize = new Size();
+		private Mat source;
+		private Mat mask;
+		private int startRow;
+		private int endRow;
+		private int halo;
 
+		void set(Mat source, Mat mask, int startRow, int endRow, int halo) {
+			this.source = source;
+			this.mask = mask;
+			this.startRow = startRow;
+			this.endRow = endRow;
+			this.halo = halo;
+		}
 
-}
+		@Override
+		protected void compute() {
+			int from = Math.max(0, startRow - halo);
+			int to = Math.min(source.rows(), endRow + halo);
+			Mat input = source.submat(from, to, 0, source.cols());
+			Mat hsvInput = input;
+			if (plan.hasBlur()) {
+				blur(input, blurType, blurRadius, blurred, kernelSize);
+				hsvInput = blurred;
+			}
+			Imgproc.cvtColor(hsvInput, hsv, Imgproc.COLOR_BGR2HSV);
+			Core.inRange(hsv, hsvThresholdLow, hsvThresholdHigh, threshold);
+			Mat result = threshold;
+			if (cvDilateIterations > 0) {
+				cvDilate(threshold, cvDilateKernel, cvDilateAnchor, cvDilateIterations, cvDilateBordertype, cvDilateBordervalue, dilated);
+				result = dilated;
+			}
+			// drop the halo rows, which saw the strip's edge instead of the frame's
+			Mat rows = result.submat(startRow - from, endRow - from, 0, result.cols());
+			Mat out = mask.submat(startRow, endRow, 0, mask.cols());
+			rows.copyTo(out);
+			input.release();
+			rows.release();
+			out.release();
+			source = null;
+			mask = null;
+		}
 
+		void release() {
+			MatTracker.release(blurred);
+			MatTracker.release(hsv);
+			MatTracker.release(threshold);
+			MatTracker.release(dilated);
+		}
+	}
+}
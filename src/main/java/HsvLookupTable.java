@@ -0,0 +1,212 @@
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * HSV threshold as a precomputed BGR to mask lookup.
+ *
+ * <p>Every one of the 2^24 BGR colours is run through cvtColor and inRange once, when the
+ * table is built, and the answers are kept as a 2 MB bitset. Thresholding a frame is then a
+ * single pass of table lookups with no colour conversion, and gives exactly the same mask
+ * as {@code cvtColor(COLOR_BGR2HSV)} followed by {@code inRange}.
+ *
+ * <p>{@link #applyDilated} also dilates the mask with a 3x3 kernel in the same pass, keeping
+ * only three rows of the undilated mask at a time.
+ */
+public class HsvLookupTable {
+    private final long[] bits = new long[1 << 18];
+    private final Scalar low;
+    private final Scalar high;
+    private final Strip[] strips;
+
+    private byte[] pixels = new byte[0];
+    private byte[] mask = new byte[0];
+
+    /**
+     * Build the table. This takes a while, so do it off the vision thread.
+     *
+     * @param threads number of strips to split each frame into, 1 for single-threaded
+     */
+    public HsvLookupTable(Scalar low, Scalar high, int threads) {
+        this.low = low.clone();
+        this.high = high.clone();
+        strips = new Strip[Math.max(1, threads)];
+        for (int i = 0; i < strips.length; i++) {
+            strips[i] = new Strip();
+        }
+        build();
+    }
+
+    public Scalar getLow() {
+        return low;
+    }
+
+    public Scalar getHigh() {
+        return high;
+    }
+
+    /**
+     * Whether this table was built for the given bounds.
+     */
+    public boolean matches(Scalar low, Scalar high) {
+        return this.low.equals(low) && this.high.equals(high);
+    }
+
+    /**
+     * Threshold an 8-bit BGR image into a single channel 0/255 mask.
+     */
+    public void apply(Mat input, Mat out) {
+        run(input, out, false);
+    }
+
+    /**
+     * Threshold and then dilate once with a 3x3 kernel, as {@code apply} followed by
+     * {@code Imgproc.dilate} with the default kernel and border would.
+     */
+    public void applyDilated(Mat input, Mat out) {
+        run(input, out, true);
+    }
+
+    private void run(Mat input, Mat out, boolean dilate) {
+        int rows = input.rows();
+        int cols = input.cols();
+        int count = rows * cols;
+        if (pixels.length < count * 3) {
+            pixels = new byte[count * 3];
+            mask = new byte[count];
+        }
+        out.create(rows, cols, CvType.CV_8UC1);
+        input.get(0, 0, pixels);
+
+        if (strips.length == 1 || rows < strips.length) {
+            strips[0].set(0, rows, rows, cols, dilate);
+            strips[0].compute();
+        } else {
+            for (int i = 0; i < strips.length; i++) {
+                // split on row boundaries; dilating strips also read the row either side
+                int start = (int) ((long) rows * i / strips.length);
+                int end = (int) ((long) rows * (i + 1) / strips.length);
+                strips[i].reinitialize();
+                strips[i].set(start, end, rows, cols, dilate);
+            }
+            ForkJoinTask.invokeAll(strips);
+        }
+
+        out.put(0, 0, mask);
+    }
+
+    private void lookup(byte[] mask, int maskOffset, int start, int end) {
+        byte[] pixels = this.pixels;
+        long[] bits = this.bits;
+        for (int i = start, m = maskOffset, p = start * 3; i < end; i++, m++, p += 3) {
+            int index = (pixels[p] & 0xff) << 16 | (pixels[p + 1] & 0xff) << 8 | (pixels[p + 2] & 0xff);
+            mask[m] = (byte) -((bits[index >>> 6] >>> index) & 1);
+        }
+    }
+
+    private void build() {
+        // one 256x256 slice of colours per blue value, green down the rows and red across
+        byte[] colours = new byte[256 * 256 * 3];
+        byte[] inRange = new byte[256 * 256];
+        Mat bgr = MatTracker.track(new Mat(256, 256, CvType.CV_8UC3));
+        Mat hsv = MatTracker.newMat();
+        Mat result = MatTracker.newMat();
+        try {
+            for (int b = 0; b < 256; b++) {
+                for (int g = 0, p = 0; g < 256; g++) {
+                    for (int r = 0; r < 256; r++, p += 3) {
+                        colours[p] = (byte) b;
+                        colours[p + 1] = (byte) g;
+                        colours[p + 2] = (byte) r;
+                    }
+                }
+                bgr.put(0, 0, colours);
+                Imgproc.cvtColor(bgr, hsv, Imgproc.COLOR_BGR2HSV);
+                Core.inRange(hsv, low, high, result);
+                result.get(0, 0, inRange);
+                for (int gr = 0; gr < inRange.length; gr++) {
+                    if (inRange[gr] != 0) {
+                        int index = b << 16 | gr;
+                        bits[index >>> 6] |= 1L << index;
+                    }
+                }
+            }
+        } finally {
+            MatTracker.release(bgr);
+            MatTracker.release(hsv);
+            MatTracker.release(result);
+        }
+    }
+
+    private final class Strip extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int startRow;
+        private int endRow;
+        private int rows;
+        private int cols;
+        private boolean dilate;
+        // one undilated row, and the last three rows dilated across, indexed by row mod 3
+        private byte[] row = new byte[0];
+        private final byte[][] across = new byte[3][0];
+
+        void set(int startRow, int endRow, int rows, int cols, boolean dilate) {
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.rows = rows;
+            this.cols = cols;
+            this.dilate = dilate;
+        }
+
+        @Override
+        protected void compute() {
+            if (!dilate) {
+                lookup(mask, startRow * cols, startRow * cols, endRow * cols);
+                return;
+            }
+            if (row.length < cols) {
+                row = new byte[cols];
+                for (int i = 0; i < across.length; i++) {
+                    across[i] = new byte[cols];
+                }
+            }
+            for (int r = startRow - 1; r <= endRow; r++) {
+                byte[] dilated = across[(r + 3) % 3];
+                if (r < 0 || r >= rows) {
+                    // outside the image counts as unset
+                    Arrays.fill(dilated, 0, cols, (byte) 0);
+                } else {
+                    lookup(row, 0, r * cols, (r + 1) * cols);
+                    dilateAcross(row, dilated, cols);
+                }
+                int out = r - 1;
+                if (out >= startRow) {
+                    byte[] above = across[(out + 2) % 3];
+                    byte[] centre = across[(out + 3) % 3];
+                    byte[] below = dilated;
+                    for (int c = 0, m = out * cols; c < cols; c++, m++) {
+                        mask[m] = (byte) (above[c] | centre[c] | below[c]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void dilateAcross(byte[] row, byte[] dilated, int cols) {
+        if (cols == 1) {
+            dilated[0] = row[0];
+            return;
+        }
+        dilated[0] = (byte) (row[0] | row[1]);
+        for (int c = 1; c < cols - 1; c++) {
+            dilated[c] = (byte) (row[c - 1] | row[c] | row[c + 1]);
+        }
+        dilated[cols - 1] = (byte) (row[cols - 2] | row[cols - 1]);
+    }
+}
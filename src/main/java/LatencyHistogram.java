@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rolling latency histogram in microseconds with log-linear buckets.
+ *
+ * <p>Each power of two is split into eight buckets, so percentiles are within 12.5% of the
+ * true value. Recording is a couple of uncontended atomic increments. {@link #drain} reads
+ * the counts and resets them, so each report covers one reporting period.
+ */
+public class LatencyHistogram {
+    private static final int subBucketBits = 3;
+    private static final int subBuckets = 1 << subBucketBits;
+    private static final int maxExponent = 30;
+    private static final int bucketCount = (maxExponent - subBucketBits + 2) * subBuckets;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketCount);
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts.incrementAndGet(bucketIndex(micros));
+        if (micros > max.get()) {
+            max.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    /**
+     * Copy the counts accumulated since the last drain into the snapshot and reset them.
+     */
+    public void drain(Snapshot snapshot) {
+        long total = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            long count = counts.getAndSet(i, 0);
+            snapshot.counts[i] = count;
+            total += count;
+        }
+        snapshot.count = total;
+        snapshot.max = max.getAndSet(0);
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < subBuckets) {
+            return (int) micros;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), maxExponent);
+        int sub = (int) (micros >>> (exponent - subBucketBits)) & (subBuckets - 1);
+        return (exponent - subBucketBits + 1) * subBuckets + sub;
+    }
+
+    static long bucketValue(int index) {
+        if (index < subBuckets) {
+            return index;
+        }
+        int exponent = index / subBuckets + subBucketBits - 1;
+        int sub = index % subBuckets;
+        return (long) (subBuckets + sub) << (exponent - subBucketBits);
+    }
+
+    /**
+     * Counts from one reporting period. Reused between reports.
+     */
+    public static class Snapshot {
+        private final long[] counts = new long[bucketCount];
+        private long count;
+        private long max;
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        /**
+         * The value below which the given fraction of samples fall, in microseconds.
+         */
+        public long percentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < bucketCount; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
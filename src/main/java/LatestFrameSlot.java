@@ -0,0 +1,59 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer/single-consumer handoff that keeps only the newest frame.
+ *
+ * <p>Offering a frame replaces any frame the consumer has not picked up yet. The replaced
+ * frame is handed back to the producer, which returns it to its pool, so stale frames are
+ * dropped instead of queued.
+ */
+public class LatestFrameSlot {
+    private final AtomicReference<Frame> latest = new AtomicReference<>();
+    private volatile Thread waiter;
+
+    /**
+     * Publish a frame.
+     *
+     * @return the unconsumed frame it replaced, or null
+     */
+    public Frame offer(Frame frame) {
+        Frame stale = latest.getAndSet(frame);
+        Thread consumer = waiter;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return stale;
+    }
+
+    /**
+     * Take the newest frame without waiting, or null if there is none.
+     */
+    public Frame poll() {
+        return latest.getAndSet(null);
+    }
+
+    /**
+     * Take the newest frame, waiting up to the timeout for one to arrive.
+     */
+    public Frame take(long timeoutNanos) {
+        Frame frame = poll();
+        if (frame != null) {
+            return frame;
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        waiter = Thread.currentThread();
+        try {
+            while ((frame = poll()) == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.interrupted()) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return frame;
+        } finally {
+            waiter = null;
+        }
+    }
+}
@@ -1,8 +1,12 @@
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import org.opencv.core.Core;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -14,6 +18,7 @@ public class Main {
     public static boolean server;
     public static List<CameraConfig> cameraConfigs = new ArrayList<>();
     public static List<SwitchedCameraConfig> switchedCameraConfigs = new ArrayList<>();
+    public static VisionConfig visionConfig = new VisionConfig();
 
 
     /*
@@ -56,10 +61,55 @@ public class Main {
                    // if NT value is a double, it's treated as an integer index
                }
            ]
+           "vision": {                                      // optional, see VisionConfig
+               "metricsEnabled": <true or false>
+               "metricsPeriodSeconds": <seconds between metrics reports>
+               "publishRateHz": <max results published per second, 0 for every frame>
+               "minArea", "maxArea", "minAspectRatio", ...: <target filter limits, 0 for none>
+               "blobExtraction": <"contours" or "components">
+               "maxTargets": <number of target slots published, 1 for only the best>
+               "targetScore": <"area", "fill" or "center", how targets are ranked>
+               "streamBandwidthKbps": <processed stream budget per client, 0 for none>
+               "targetTracking": <true to smooth and predict the target, see the tracker* keys>
+               "deadlineMillis": <per-frame processing budget, quality steps down past it, 0 for off>
+               "matDebug": <true to log live native Mats by allocation site>
+               "recordDirectory": <directory for match recordings, see the record* keys, "" for off>
+               "motionThreshold": <fraction of changed pixels below which a frame reuses the last result, 0 for off>
+               "roiTracking": <true to search only around the last target>
+               "pyramidScale": <0.5 or 0.25 for coarse-to-fine search, 1 for off>
+               "hsvLookupTable": <true to threshold through a precomputed lookup table>
+               "pipelineStrips": <strips of each frame to blur, threshold and dilate in parallel>
+               "pipeline": {"stages": [...]}               // optional, see PipelineSpec
+               "liveTuning": <true to tune the pipeline from NetworkTables while running>
+           }
        }
      */
+    /*
+       Offline replay, with no cameras, streams or NetworkTables:
+           --replay <image directory or video file>
+           --fps <frames per second>        // optional, default as fast as possible
+           --out <results csv>              // optional, default replay-results.csv
+           --config <frc.json>              // optional, only the "vision" settings are used
+           --compare                        // optional, report accuracy against full resolution
+
+       Export part of a match recording as images for --replay:
+           --export <recording .vrec file>
+           --out <directory>                // optional, default the recording's name
+           --session <number>               // optional, default the latest
+           --from <seconds>                 // optional, from the session's oldest frame, default 0
+           --to <seconds>                   // optional, default the end
+     */
     public static void main(String... args) {
         try {
+            if (args.length > 0 && "--replay".equals(args[0])) {
+                replay(args);
+                return;
+            }
+            if (args.length > 0 && "--export".equals(args[0])) {
+                export(args);
+                return;
+            }
+
             if (args.length > 0) {
                 configFile = args[0];
             }
@@ -69,13 +119,118 @@ public class Main {
                 return;
             }
 
-            var runner = new Version1(team, server, cameraConfigs);
+            var runner = new Version1(team, server, cameraConfigs, switchedCameraConfigs, visionConfig);
             runner.run();
         } catch(Exception e){
             System.out.println("FAILED BADLY");
         }
     }
 
+    /**
+     * Run recorded footage through the pipeline.
+     */
+    public static void replay(String... args) throws IOException {
+        String input = null;
+        double fps = 0;
+        String outputFile = "replay-results.csv";
+        boolean compare = false;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if ("--compare".equals(option)) {
+                compare = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                System.err.println("replay option '" + option + "' needs a value");
+                return;
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--replay":
+                    input = value;
+                    break;
+                case "--fps":
+                    fps = Double.parseDouble(value);
+                    break;
+                case "--out":
+                    outputFile = value;
+                    break;
+                case "--config":
+                    configFile = value;
+                    if (!readConfig()) {
+                        return;
+                    }
+                    break;
+                default:
+                    System.err.println("unknown replay option '" + option + "'");
+                    return;
+            }
+        }
+        if (input == null) {
+            System.err.println("--replay needs an image directory or video file");
+            return;
+        }
+
+        new ReplayRunner(input, fps, outputFile, visionConfig, compare).run();
+    }
+
+    /**
+     * Export frames from a match recording.
+     */
+    public static void export(String... args) throws IOException {
+        String input = null;
+        String output = null;
+        int session = 0;
+        double from = 0;
+        double to = Double.MAX_VALUE;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                System.err.println("export option '" + option + "' needs a value");
+                return;
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--export":
+                    input = value;
+                    break;
+                case "--out":
+                    output = value;
+                    break;
+                case "--session":
+                    session = Integer.parseInt(value);
+                    break;
+                case "--from":
+                    from = Double.parseDouble(value);
+                    break;
+                case "--to":
+                    to = Double.parseDouble(value);
+                    break;
+                default:
+                    System.err.println("unknown export option '" + option + "'");
+                    return;
+            }
+        }
+        if (input == null) {
+            System.err.println("--export needs a recording file");
+            return;
+        }
+        if (output == null) {
+            output = input.replaceFirst("\\.vrec$", "");
+            if (output.equals(input)) {
+                output = input + "-frames";
+            }
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        MatchRecording recording = MatchRecording.open(new File(input));
+        if (session == 0) {
+            session = recording.latestSession();
+        }
+        int frames = recording.export(new File(output), session, from, to);
+        System.out.println("Exported " + frames + " frame(s) of session " + session + " to " + output);
+    }
+
     /**
      * Report parse error.
      */
@@ -203,6 +358,23 @@ public class Main {
             }
         }
 
+        // vision settings (optional)
+        if (obj.has("vision")) {
+            Gson gson = new GsonBuilder().create();
+            visionConfig = gson.fromJson(obj.get("vision"), VisionConfig.class);
+        }
+        MatTracker.setDebug(visionConfig.matDebug);
+        if (!(visionConfig.pyramidScale > 0 && visionConfig.pyramidScale <= 1)) {
+            parseError("pyramidScale must be above 0 and at most 1, not " + visionConfig.pyramidScale);
+            return false;
+        }
+        try {
+            System.out.println("Vision pipeline: " + PipelinePlan.compile(visionConfig));
+        } catch (IllegalArgumentException e) {
+            parseError("vision pipeline: " + e.getMessage());
+            return false;
+        }
+
         return true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ownership of native Mats, so their memory is freed when we say rather than when the
+ * garbage collector gets around to finalizing them.
+ *
+ * <p>Every Mat the pipeline owns is registered with {@link #track} when it is made and freed
+ * with {@link #release}. Views made with submat share their parent's memory and are not
+ * tracked. Per-frame outputs made by OpenCV itself, such as findContours results, are only
+ * tracked in debug mode, where each tracked Mat also remembers where it was allocated so
+ * that {@link #report} can list live Mats and bytes by allocation site.
+ */
+public final class MatTracker {
+    private static final String unknownSite = "(debug off)";
+
+    private static final Map<Mat, String> live = new ConcurrentHashMap<>();
+    private static volatile boolean debug;
+
+    private MatTracker() {
+    }
+
+    /**
+     * Record allocation sites for Mats tracked from now on. Set before the pipelines are built.
+     */
+    public static void setDebug(boolean debug) {
+        MatTracker.debug = debug;
+    }
+
+    public static boolean isDebug() {
+        return debug;
+    }
+
+    public static Mat newMat() {
+        return track(new Mat());
+    }
+
+    /**
+     * Take ownership of a Mat. It must be given back with {@link #release}.
+     */
+    public static <T extends Mat> T track(T mat) {
+        live.put(mat, debug ? allocationSite() : unknownSite);
+        return mat;
+    }
+
+    /**
+     * Track Mats made fresh every frame, such as findContours output. Only in debug mode,
+     * to keep the registry off the per-frame path otherwise.
+     */
+    public static void trackAll(List<? extends Mat> mats) {
+        if (debug) {
+            for (Mat mat : mats) {
+                track(mat);
+            }
+        }
+    }
+
+    /**
+     * Free a Mat's native memory now. Safe on null, untracked and already released Mats.
+     */
+    public static void release(Mat mat) {
+        if (mat != null) {
+            live.remove(mat);
+            mat.release();
+        }
+    }
+
+    /**
+     * Release every Mat in the list and empty it.
+     */
+    public static void releaseAll(List<? extends Mat> mats) {
+        for (Mat mat : mats) {
+            release(mat);
+        }
+        mats.clear();
+    }
+
+    public static int liveCount() {
+        return live.size();
+    }
+
+    /**
+     * Native bytes held by the tracked Mats.
+     */
+    public static long liveBytes() {
+        long bytes = 0;
+        for (Mat mat : live.keySet()) {
+            bytes += bytes(mat);
+        }
+        return bytes;
+    }
+
+    /**
+     * One line per allocation site, largest first: live Mats and the bytes they hold.
+     */
+    public static String report() {
+        Map<String, long[]> sites = new HashMap<>();
+        for (Map.Entry<Mat, String> entry : live.entrySet()) {
+            long[] totals = sites.computeIfAbsent(entry.getValue(), site -> new long[2]);
+            totals[0]++;
+            totals[1] += bytes(entry.getKey());
+        }
+        List<Map.Entry<String, long[]>> sorted = new ArrayList<>(sites.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, long[]> site : sorted) {
+            report.append(String.format("%8d bytes in %4d Mat(s) from %s%n",
+                    site.getValue()[1], site.getValue()[0], site.getKey()));
+        }
+        return report.toString();
+    }
+
+    private static long bytes(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+
+    private static String allocationSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> !frame.getClassName().equals(MatTracker.class.getName()))
+                .findFirst()
+                .map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+                .orElse("unknown"));
+    }
+}
@@ -0,0 +1,222 @@
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records what one camera saw and published into a memory-mapped {@link MatchRecording}
+ * ring file, overwriting the oldest frames once it is full.
+ *
+ * <p>The detection thread only copies the frame and its result into one of two staging
+ * buffers, at most "recordFps" times a second, and never waits: if the writer still has
+ * both buffers the frame is not recorded. The writer thread downscales the frame and
+ * copies it into the mapped file, and the kernel writes the dirty pages out to the SD card
+ * in the background. The writer also skips frames that would take it over the
+ * "recordMaxKBps" write budget. A recording that is reopened with the same layout
+ * carries on after its newest frame as a new session, so a reboot mid-match does not lose
+ * the start of it.
+ */
+public class MatchRecorder {
+    private static final long syncPeriodNanos = 5_000_000_000L;
+
+    private final String name;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int slotBytes;
+    private final Size size;
+    // from the camera's full-resolution pixels, which targets are published in, to the recording's
+    private final double scaleX;
+    private final double scaleY;
+    private final long intervalMicros;
+    private final double maxBytesPerSecond;
+    private final ConcurrentLinkedQueue<Staged> spare = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Staged> pending = new AtomicReference<>();
+    private final Thread writer;
+
+    private long lastRecordTime = Long.MIN_VALUE / 2;
+    private long sequence;
+    private final int session;
+    private int skipped;
+    private double budgetBytes;
+    private long lastBudgetNanos = System.nanoTime();
+    private long lastSyncNanos = System.nanoTime();
+    private final Mat small = MatTracker.newMat();
+    private byte[] pixels;
+
+    /**
+     * Map the ring file, creating or resizing it as needed.
+     *
+     * @param width  width of the camera's frames, scaled by "recordScale" for the recording
+     * @param height height of the camera's frames
+     */
+    public MatchRecorder(String name, File file, int width, int height, VisionConfig config) throws IOException {
+        this.name = name;
+        double scale = Math.min(1.0, Math.max(0.05, config.recordScale));
+        int recordWidth = Math.max(1, (int) Math.round(width * scale));
+        int recordHeight = Math.max(1, (int) Math.round(height * scale));
+        size = new Size(recordWidth, recordHeight);
+        scaleX = (double) recordWidth / width;
+        scaleY = (double) recordHeight / height;
+        slotCount = Math.max(1, (int) Math.round(config.recordSeconds * config.recordFps));
+        slotBytes = MatchRecording.slotBytes(recordWidth, recordHeight);
+        long fileBytes = MatchRecording.headerBytes + (long) slotCount * slotBytes;
+        if (fileBytes > Integer.MAX_VALUE) {
+            throw new IOException(String.format(Locale.ROOT,
+                    "a %d slot recording of %dx%d frames would be over 2 GB", slotCount, recordWidth, recordHeight));
+        }
+        intervalMicros = (long) (1_000_000 / Math.max(0.1, config.recordFps));
+        maxBytesPerSecond = config.recordMaxKBps * 1024;
+        pixels = new byte[recordWidth * recordHeight * 3];
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create '" + directory + "'");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean resized = raf.length() != fileBytes;
+            raf.setLength(fileBytes);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+            if (resized || !MatchRecording.hasLayout(buffer, slotCount, recordWidth, recordHeight)) {
+                for (int slot = 0; slot < slotCount; slot++) {
+                    buffer.putLong(offset(slot) + MatchRecording.sequenceOffset, 0);
+                }
+                MatchRecording.writeHeader(buffer, slotCount, recordWidth, recordHeight);
+                session = 1;
+            } else {
+                sequence = MatchRecording.lastSequence(buffer, slotCount, slotBytes);
+                session = MatchRecording.lastSession(buffer) + 1;
+            }
+            MatchRecording.setSession(buffer, session);
+        }
+        spare.add(new Staged());
+        spare.add(new Staged());
+        writer = new Thread(this::writeLoop, "Recorder " + name);
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        System.out.println(String.format(Locale.ROOT, "Recording '%s' to %s, session %d: %d frames of %dx%d, %.0f MB",
+                name, file, session, slotCount, recordWidth, recordHeight, fileBytes / 1e6));
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Stage a processed frame and its result for recording, unless one was staged too
+     * recently or the writer is behind. Called on the detection thread; only copies.
+     */
+    public void record(Frame frame) {
+        long now = VisionClock.nowMicros();
+        if (now - lastRecordTime < intervalMicros) {
+            return;
+        }
+        Staged staged = spare.poll();
+        if (staged == null) {
+            return;
+        }
+        lastRecordTime = now;
+        frame.image.copyTo(staged.image);
+        staged.frameId = frame.id;
+        staged.captureTime = frame.captureTime;
+        staged.recordTime = System.currentTimeMillis();
+        staged.found = frame.hasTarget ? (frame.coasting ? 2 : 1) : 0;
+        // the target in the recorded image's pixels, so an export replays against its own results
+        staged.area = frame.area * scaleX * scaleY;
+        staged.x = frame.x * scaleX;
+        staged.y = frame.y * scaleY;
+        staged.width = frame.width * scaleX;
+        staged.height = frame.height * scaleY;
+        Staged stale = pending.getAndSet(staged);
+        if (stale != null) {
+            spare.add(stale);
+        }
+        LockSupport.unpark(writer);
+    }
+
+    private void writeLoop() {
+        for (; ; ) {
+            Staged staged = pending.getAndSet(null);
+            if (staged == null) {
+                LockSupport.parkNanos(intervalMicros * 1000);
+                continue;
+            }
+            if (withinBudget()) {
+                write(staged);
+            } else {
+                skipped++;
+            }
+            spare.add(staged);
+            long now = System.nanoTime();
+            if (now - lastSyncNanos >= syncPeriodNanos) {
+                lastSyncNanos = now;
+                buffer.force();
+                if (skipped > 0) {
+                    System.out.println("Recorder '" + name + "' skipped " + skipped + " frame(s) to stay in its write budget");
+                    skipped = 0;
+                }
+            }
+        }
+    }
+
+    private boolean withinBudget() {
+        if (maxBytesPerSecond <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        budgetBytes = Math.min(Math.max(maxBytesPerSecond, slotBytes), budgetBytes + (now - lastBudgetNanos) / 1e9 * maxBytesPerSecond);
+        lastBudgetNanos = now;
+        if (budgetBytes < slotBytes) {
+            return false;
+        }
+        budgetBytes -= slotBytes;
+        return true;
+    }
+
+    private void write(Staged staged) {
+        Imgproc.resize(staged.image, small, size, 0, 0, Imgproc.INTER_AREA);
+        small.get(0, 0, pixels);
+        sequence++;
+        int offset = offset((int) ((sequence - 1) % slotCount));
+        // invalidate the slot while it is being rewritten
+        buffer.putLong(offset + MatchRecording.sequenceOffset, 0);
+        buffer.putLong(offset + MatchRecording.frameIdOffset, staged.frameId);
+        buffer.putLong(offset + MatchRecording.captureTimeOffset, staged.captureTime);
+        buffer.putLong(offset + MatchRecording.recordTimeOffset, staged.recordTime);
+        buffer.putInt(offset + MatchRecording.foundOffset, staged.found);
+        buffer.putDouble(offset + MatchRecording.targetOffset, staged.area);
+        buffer.putDouble(offset + MatchRecording.targetOffset + 8, staged.x);
+        buffer.putDouble(offset + MatchRecording.targetOffset + 16, staged.y);
+        buffer.putDouble(offset + MatchRecording.targetOffset + 24, staged.width);
+        buffer.putDouble(offset + MatchRecording.targetOffset + 32, staged.height);
+        buffer.putInt(offset + MatchRecording.sessionOffset, session);
+        buffer.position(offset + MatchRecording.slotHeaderBytes);
+        buffer.put(pixels);
+        buffer.putLong(offset + MatchRecording.sequenceOffset, sequence);
+    }
+
+    private int offset(int slot) {
+        return MatchRecording.headerBytes + slot * slotBytes;
+    }
+
+    private static final class Staged {
+        final Mat image = MatTracker.newMat();
+        long frameId;
+        long captureTime;
+        long recordTime;
+        int found;
+        double area;
+        double x;
+        double y;
+        double width;
+        double height;
+    }
+}
@@ -0,0 +1,198 @@
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The ring file a {@link MatchRecorder} writes, and the exporter that reads it back.
+ *
+ * <p>The file is a header followed by a fixed number of equal slots, each holding one
+ * downscaled BGR frame and the result published for it, scaled to the frame's pixels. A
+ * slot's sequence number is written last and is 0 until the slot has been filled, so a
+ * slot half written when the power went is skipped. The oldest frame is the slot with the lowest sequence number.
+ *
+ * <p>Each time a recorder opens the file it starts a new session, numbered from 1, and
+ * stamps every slot it writes with it. Capture times come from the camera's clock, which
+ * restarts with the coprocessor, so they are only compared within a session. The wall
+ * clock time is kept for reference only, since a coprocessor with no real-time clock
+ * starts from a wrong date and NTP may later step it.
+ *
+ * <pre>
+ * header: magic, version, slot count, slot bytes, image width, image height, session (ints)
+ * slot:   sequence, frame id, capture time (us), wall time (ms since the epoch) (longs),
+ *         found (int), area, x, y, width, height (doubles), session (int), then the image bytes
+ * </pre>
+ */
+public final class MatchRecording {
+    static final int magic = 0x56524543; // "VREC"
+    static final int version = 2;
+    static final int headerBytes = 64;
+    static final int slotHeaderBytes = 96;
+    static final int sequenceOffset = 0;
+    static final int frameIdOffset = 8;
+    static final int captureTimeOffset = 16;
+    static final int recordTimeOffset = 24;
+    static final int foundOffset = 32;
+    static final int targetOffset = 40;
+    static final int sessionOffset = 80;
+    private static final int headerSessionOffset = 24;
+
+    private final int slotCount;
+    private final int slotBytes;
+    private final int width;
+    private final int height;
+    private final MappedByteBuffer buffer;
+
+    private MatchRecording(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        slotCount = buffer.getInt(8);
+        slotBytes = buffer.getInt(12);
+        width = buffer.getInt(16);
+        height = buffer.getInt(20);
+    }
+
+    static int slotBytes(int width, int height) {
+        return slotHeaderBytes + width * height * 3;
+    }
+
+    static void writeHeader(ByteBuffer buffer, int slotCount, int width, int height) {
+        buffer.putInt(0, magic);
+        buffer.putInt(4, version);
+        buffer.putInt(8, slotCount);
+        buffer.putInt(12, slotBytes(width, height));
+        buffer.putInt(16, width);
+        buffer.putInt(20, height);
+    }
+
+    static int lastSession(ByteBuffer buffer) {
+        return buffer.getInt(headerSessionOffset);
+    }
+
+    static void setSession(ByteBuffer buffer, int session) {
+        buffer.putInt(headerSessionOffset, session);
+    }
+
+    /**
+     * Whether the buffer already holds a recording with this layout.
+     */
+    static boolean hasLayout(ByteBuffer buffer, int slotCount, int width, int height) {
+        return buffer.getInt(0) == magic && buffer.getInt(4) == version && buffer.getInt(8) == slotCount
+                && buffer.getInt(16) == width && buffer.getInt(20) == height;
+    }
+
+    /**
+     * The highest sequence number in the file, 0 if it is empty.
+     */
+    static long lastSequence(ByteBuffer buffer, int slotCount, int slotBytes) {
+        long last = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            last = Math.max(last, buffer.getLong(headerBytes + slot * slotBytes + sequenceOffset));
+        }
+        return last;
+    }
+
+    /**
+     * Map a recording for reading.
+     *
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public static MatchRecording open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (raf.length() < headerBytes || buffer.getInt(0) != magic || buffer.getInt(4) != version) {
+                throw new IOException("'" + file + "' is not a match recording");
+            }
+            return new MatchRecording(buffer);
+        }
+    }
+
+    /**
+     * The session of the newest frame in the file, 0 if it is empty.
+     */
+    public int latestSession() {
+        List<Integer> slots = filledSlots();
+        return slots.isEmpty() ? 0 : buffer.getInt(offset(slots.get(slots.size() - 1)) + sessionOffset);
+    }
+
+    /**
+     * Write one session's frames recorded between the two times, in seconds from its oldest
+     * frame still in the file, as numbered PNGs that --replay reads in order, with their
+     * results in results.csv. Frames are taken in the order they were recorded.
+     *
+     * @return the number of frames written
+     */
+    public int export(File directory, int session, double fromSeconds, double toSeconds) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create '" + directory + "'");
+        }
+        byte[] pixels = new byte[width * height * 3];
+        Mat image = new Mat(height, width, CvType.CV_8UC3);
+        long start = 0;
+        boolean started = false;
+        int written = 0;
+        try (PrintWriter out = new PrintWriter(new File(directory, "results.csv"), "UTF-8")) {
+            out.println("image,session,frame id,capture time (us),seconds,wall time (ms),found,area,x,y,width,height");
+            for (int slot : filledSlots()) {
+                int offset = offset(slot);
+                if (buffer.getInt(offset + sessionOffset) != session) {
+                    continue;
+                }
+                long captureTime = buffer.getLong(offset + captureTimeOffset);
+                if (!started) {
+                    start = captureTime;
+                    started = true;
+                }
+                double seconds = (captureTime - start) / 1e6;
+                if (seconds < fromSeconds || seconds > toSeconds) {
+                    continue;
+                }
+                String name = String.format(Locale.ROOT, "frame-%06d.png", written);
+                ByteBuffer slice = buffer.duplicate();
+                slice.position(offset + slotHeaderBytes);
+                slice.get(pixels);
+                image.put(0, 0, pixels);
+                if (!Imgcodecs.imwrite(new File(directory, name).getPath(), image)) {
+                    throw new IOException("could not write '" + name + "'");
+                }
+                out.printf(Locale.ROOT, "%s,%d,%d,%d,%.3f,%d,%d,%.1f,%.0f,%.0f,%.0f,%.0f%n", name, session,
+                        buffer.getLong(offset + frameIdOffset), captureTime, seconds,
+                        buffer.getLong(offset + recordTimeOffset), buffer.getInt(offset + foundOffset),
+                        buffer.getDouble(offset + targetOffset), buffer.getDouble(offset + targetOffset + 8),
+                        buffer.getDouble(offset + targetOffset + 16), buffer.getDouble(offset + targetOffset + 24),
+                        buffer.getDouble(offset + targetOffset + 32));
+                written++;
+            }
+        } finally {
+            image.release();
+        }
+        return written;
+    }
+
+    /**
+     * Slots that have been written, oldest first.
+     */
+    private List<Integer> filledSlots() {
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (buffer.getLong(offset(slot) + sequenceOffset) != 0) {
+                slots.add(slot);
+            }
+        }
+        slots.sort((a, b) -> Long.compare(buffer.getLong(offset(a)), buffer.getLong(offset(b))));
+        return slots;
+    }
+
+    private int offset(int slot) {
+        return headerBytes + slot * slotBytes;
+    }
+}
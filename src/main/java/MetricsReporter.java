@@ -0,0 +1,123 @@
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Periodically publishes stage latencies and frame counters to SNIP/metrics and the console.
+ *
+ * <p>Each stage is published as a double array of {p50, p95, p99, max, samples} with
+ * latencies in milliseconds, under SNIP/metrics/&lt;camera name&gt;.
+ *
+ * <p>Memory is published as SNIP/metrics/memory, a double array of {tracked Mats, tracked
+ * native MB, process resident MB, Java heap used MB}. With Mat debugging on, the live Mats
+ * are also logged by allocation site.
+ */
+public class MetricsReporter {
+    private static final long pageSize = 4096;
+
+    private final NetworkTable metricsTable;
+    private final long periodMillis;
+    private final List<VisionMetrics> cameras = new ArrayList<>();
+    private final LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+    private final double[] values = new double[5];
+    private final double[] memory = new double[4];
+    private final StringBuilder line = new StringBuilder();
+
+    public MetricsReporter(NetworkTableInstance ntinst, double periodSeconds) {
+        this.metricsTable = ntinst.getTable("SNIP/metrics");
+        this.periodMillis = (long) (periodSeconds * 1000);
+    }
+
+    public synchronized void add(VisionMetrics metrics) {
+        if (metrics.isEnabled()) {
+            cameras.add(metrics);
+        }
+    }
+
+    public void start() {
+        Thread thread = new Thread(() -> {
+            for (; ; ) {
+                try {
+                    Thread.sleep(periodMillis);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                report();
+            }
+        }, "Metrics reporter");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private synchronized void report() {
+        for (VisionMetrics metrics : cameras) {
+            NetworkTable table = metricsTable.getSubTable(metrics.getName());
+            line.setLength(0);
+            line.append("metrics '").append(metrics.getName()).append("':");
+            for (VisionStage stage : VisionStage.values()) {
+                metrics.getHistogram(stage).drain(snapshot);
+                if (snapshot.count() == 0) {
+                    continue;
+                }
+                values[0] = millis(snapshot.percentile(0.50));
+                values[1] = millis(snapshot.percentile(0.95));
+                values[2] = millis(snapshot.percentile(0.99));
+                values[3] = millis(snapshot.max());
+                values[4] = snapshot.count();
+                table.getEntry(stage.getKey()).setDoubleArray(values);
+                line.append(' ').append(stage.getKey())
+                        .append(" p50=").append(values[0])
+                        .append(" p99=").append(values[2])
+                        .append(" max=").append(values[3]);
+            }
+            table.getEntry("framesProcessed").setDouble(metrics.getFramesProcessed());
+            table.getEntry("framesDropped").setDouble(metrics.getFramesDropped());
+            line.append(" processed=").append(metrics.getFramesProcessed())
+                    .append(" dropped=").append(metrics.getFramesDropped());
+            System.out.println(line);
+        }
+        reportMemory();
+    }
+
+    private void reportMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        memory[0] = MatTracker.liveCount();
+        memory[1] = megabytes(MatTracker.liveBytes());
+        memory[2] = megabytes(residentBytes());
+        memory[3] = megabytes(runtime.totalMemory() - runtime.freeMemory());
+        metricsTable.getEntry("memory").setDoubleArray(memory);
+        System.out.println(String.format(Locale.ROOT,
+                "memory: mats=%.0f matMB=%.1f residentMB=%.1f heapMB=%.1f",
+                memory[0], memory[1], memory[2], memory[3]));
+        if (MatTracker.isDebug()) {
+            System.out.print(MatTracker.report());
+        }
+    }
+
+    /**
+     * Resident set size from /proc, or 0 where that is not available.
+     */
+    private static long residentBytes() {
+        try {
+            String[] statm = new String(Files.readAllBytes(Paths.get("/proc/self/statm"))).trim().split(" ");
+            return Long.parseLong(statm[1]) * pageSize;
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,84 @@
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Decides whether a frame has changed enough since the last fully processed one to be
+ * worth running the pipeline on.
+ *
+ * <p>Each frame is shrunk to a small grey thumbnail and compared with the thumbnail of the
+ * last frame that was processed. The frame is static when fewer than "motionThreshold" of
+ * the thumbnail's pixels moved by more than "motionPixelDelta" grey levels. Comparing
+ * against the last processed frame rather than the previous one means a slow drift adds
+ * up until it is noticed, and a full refresh is forced after "motionRefreshFrames" static
+ * frames in a row regardless.
+ */
+public class MotionGate {
+    private final double threshold;
+    private final double pixelDelta;
+    private final int refreshFrames;
+    private final int width;
+    private final Size size = new Size();
+    private final Mat small = MatTracker.newMat();
+    private Mat thumbnail = MatTracker.newMat();
+    private Mat reference = MatTracker.newMat();
+    private final Mat difference = MatTracker.newMat();
+    private boolean hasReference;
+    private int staticFrames;
+
+    public MotionGate(VisionConfig config) {
+        threshold = config.motionThreshold;
+        pixelDelta = config.motionPixelDelta;
+        refreshFrames = Math.max(1, config.motionRefreshFrames);
+        width = Math.max(8, config.motionWidth);
+    }
+
+    /**
+     * Whether the frame can reuse the last processed frame's result. If not, call
+     * {@link #processed} once it has been processed.
+     */
+    public boolean isStatic(Mat image) {
+        size.width = Math.min(width, image.cols());
+        size.height = Math.max(1, Math.round(image.rows() * size.width / image.cols()));
+        Imgproc.resize(image, small, size, 0, 0, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(small, thumbnail, Imgproc.COLOR_BGR2GRAY);
+        if (!hasReference || staticFrames >= refreshFrames
+                || thumbnail.cols() != reference.cols() || thumbnail.rows() != reference.rows()) {
+            return false;
+        }
+        Core.absdiff(thumbnail, reference, difference);
+        Imgproc.threshold(difference, difference, pixelDelta, 255, Imgproc.THRESH_BINARY);
+        int moved = Core.countNonZero(difference);
+        if (moved < threshold * difference.total()) {
+            staticFrames++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The frame just checked was processed; compare later frames with it.
+     */
+    public void processed() {
+        Mat previous = reference;
+        reference = thumbnail;
+        thumbnail = previous;
+        hasReference = true;
+        staticFrames = 0;
+    }
+
+    /**
+     * Process the next frame whatever it looks like, e.g. after the pipeline changed.
+     */
+    public void invalidate() {
+        hasReference = false;
+    }
+
+    public void release() {
+        MatTracker.release(small);
+        MatTracker.release(thumbnail);
+        MatTracker.release(reference);
+        MatTracker.release(difference);
+    }
+}
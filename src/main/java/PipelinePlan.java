@@ -0,0 +1,205 @@
+import org.opencv.core.Scalar;
+
+import java.util.Locale;
+
+/**
+ * A {@link PipelineSpec} checked and compiled into the steps the pipeline will run.
+ *
+ * <p>Stages that would leave the image unchanged, a blur of radius 0 or a dilate of 0
+ * iterations, are dropped. When the threshold goes through the lookup table and is
+ * followed by a single 3x3 dilate, the two are fused into one pass that never writes out
+ * the undilated mask. Plans are immutable, so a pipeline built from one cannot change
+ * under a running frame.
+ */
+public final class PipelinePlan {
+    private static final int blurRank = 0;
+    private static final int thresholdRank = 1;
+    private static final int dilateRank = 2;
+    private static final int blobRank = 3;
+
+    private final GripPipeline.BlurType blurType;
+    private final double blurRadius;
+    private final boolean blur;
+    private final Scalar hsvLow;
+    private final Scalar hsvHigh;
+    private final int dilateIterations;
+    private final boolean fuseThresholdDilate;
+    private final boolean externalOnly;
+    private final boolean components;
+
+    private PipelinePlan(GripPipeline.BlurType blurType, double blurRadius, Scalar hsvLow, Scalar hsvHigh,
+                         int dilateIterations, boolean lookupTable, boolean externalOnly, boolean components) {
+        this.blurType = blurType;
+        this.blurRadius = blurRadius;
+        this.blur = !blurType.isNoOp(blurRadius);
+        this.hsvLow = hsvLow;
+        this.hsvHigh = hsvHigh;
+        this.dilateIterations = Math.max(0, dilateIterations);
+        this.fuseThresholdDilate = lookupTable && this.dilateIterations == 1;
+        this.externalOnly = externalOnly;
+        this.components = components;
+    }
+
+    /**
+     * The pipeline GRIP generated, with no lookup table.
+     */
+    public static PipelinePlan grip() {
+        return compile(PipelineSpec.grip("contours"), false);
+    }
+
+    /**
+     * Compile the configured pipeline, or GRIP's if none is configured.
+     */
+    public static PipelinePlan compile(VisionConfig config) {
+        PipelineSpec spec = config.pipeline != null ? config.pipeline : PipelineSpec.grip(config.blobExtraction);
+        return compile(spec, config.hsvLookupTable);
+    }
+
+    /**
+     * Check the stages and compile them.
+     *
+     * @param lookupTable whether the threshold will run through an {@link HsvLookupTable}
+     * @throws IllegalArgumentException if the stages are unknown, repeated, out of order
+     *                                  or missing
+     */
+    public static PipelinePlan compile(PipelineSpec spec, boolean lookupTable) {
+        GripPipeline.BlurType blurType = GripPipeline.BlurType.BOX;
+        double blurRadius = 0;
+        Scalar low = null;
+        Scalar high = null;
+        int iterations = 0;
+        boolean externalOnly = false;
+        Boolean components = null;
+
+        int lastRank = -1;
+        if (spec.stages == null || spec.stages.isEmpty()) {
+            throw new IllegalArgumentException("no stages");
+        }
+        for (PipelineSpec.StageSpec stage : spec.stages) {
+            int rank = rank(stage.stage);
+            if (rank <= lastRank) {
+                throw new IllegalArgumentException("stage '" + stage.stage + "' is repeated or out of order;"
+                        + " the order is blur, hsvThreshold, dilate, then findContours or connectedComponents");
+            }
+            lastRank = rank;
+            switch (rank) {
+                case blurRank:
+                    blurType = blurType(stage.blurType);
+                    blurRadius = stage.radius;
+                    break;
+                case thresholdRank:
+                    low = new Scalar(min(stage.hue, "hue"), min(stage.saturation, "saturation"), min(stage.value, "value"));
+                    high = new Scalar(stage.hue[1], stage.saturation[1], stage.value[1]);
+                    break;
+                case dilateRank:
+                    iterations = stage.iterations;
+                    break;
+                default:
+                    components = "connectedComponents".equals(stage.stage);
+                    externalOnly = stage.externalOnly;
+                    break;
+            }
+        }
+        if (low == null) {
+            throw new IllegalArgumentException("an hsvThreshold stage is required");
+        }
+        if (components == null) {
+            throw new IllegalArgumentException("the last stage must be findContours or connectedComponents");
+        }
+        return new PipelinePlan(blurType, blurRadius, low, high, iterations, lookupTable, externalOnly, components);
+    }
+
+    private static int rank(String stage) {
+        if (stage == null) {
+            throw new IllegalArgumentException("stage with no \"stage\" name");
+        }
+        switch (stage) {
+            case "blur":
+                return blurRank;
+            case "hsvThreshold":
+                return thresholdRank;
+            case "dilate":
+                return dilateRank;
+            case "findContours":
+            case "connectedComponents":
+                return blobRank;
+            default:
+                throw new IllegalArgumentException("unknown stage '" + stage + "'");
+        }
+    }
+
+    private static GripPipeline.BlurType blurType(String name) {
+        try {
+            return GripPipeline.BlurType.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("unknown blurType '" + name + "'");
+        }
+    }
+
+    private static double min(double[] range, String name) {
+        if (range == null || range.length != 2) {
+            throw new IllegalArgumentException(name + " must be a [min, max] pair");
+        }
+        return range[0];
+    }
+
+    public GripPipeline.BlurType getBlurType() {
+        return blurType;
+    }
+
+    public double getBlurRadius() {
+        return blurRadius;
+    }
+
+    /**
+     * Whether the blur stage runs, false if it was left out or would do nothing.
+     */
+    public boolean hasBlur() {
+        return blur;
+    }
+
+    public Scalar getHsvLow() {
+        return hsvLow.clone();
+    }
+
+    public Scalar getHsvHigh() {
+        return hsvHigh.clone();
+    }
+
+    /**
+     * Dilate iterations, 0 if the stage was left out or dropped.
+     */
+    public int getDilateIterations() {
+        return dilateIterations;
+    }
+
+    public boolean fusesThresholdDilate() {
+        return fuseThresholdDilate;
+    }
+
+    public boolean isExternalOnly() {
+        return externalOnly;
+    }
+
+    public boolean usesConnectedComponents() {
+        return components;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder steps = new StringBuilder();
+        if (blur) {
+            steps.append(blurType).append(" radius ").append(blurRadius).append(" -> ");
+        }
+        if (fuseThresholdDilate) {
+            steps.append("hsvThreshold+dilate (fused)");
+        } else {
+            steps.append("hsvThreshold");
+            if (dilateIterations > 0) {
+                steps.append(" -> dilate x").append(dilateIterations);
+            }
+        }
+        steps.append(" -> ").append(components ? "connectedComponents" : "findContours");
+        return steps.toString();
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The vision pipeline as a list of stages, read from the "pipeline" object in frc.json.
+ *
+ * <pre>
+ * "pipeline": {
+ *     "stages": [
+ *         {"stage": "blur", "blurType": "median", "radius": 0},
+ *         {"stage": "hsvThreshold", "hue": [60, 92], "saturation": [158, 255], "value": [92, 255]},
+ *         {"stage": "dilate", "iterations": 1},
+ *         {"stage": "findContours", "externalOnly": false}
+ *     ]
+ * }
+ * </pre>
+ *
+ * <p>Blur and dilate are optional. The last stage is "findContours" or
+ * "connectedComponents". See {@link PipelinePlan} for how the stages are compiled.
+ */
+@SuppressWarnings("MemberName")
+public class PipelineSpec {
+    public List<StageSpec> stages = new ArrayList<>();
+
+    public static class StageSpec {
+        public String stage;
+
+        // blur
+        public String blurType = "median"; // "box", "gaussian", "median" or "bilateral"
+        public double radius = 0;
+
+        // hsvThreshold, each a [min, max] pair on OpenCV's 0-180 hue and 0-255 scales
+        public double[] hue = {0, 180};
+        public double[] saturation = {0, 255};
+        public double[] value = {0, 255};
+
+        // dilate, with a 3x3 kernel
+        public int iterations = 1;
+
+        // findContours
+        public boolean externalOnly = false;
+    }
+
+    /**
+     * The pipeline GRIP generated, ending in the given blob extraction.
+     *
+     * @param blobExtraction "contours" or "components"
+     */
+    public static PipelineSpec grip(String blobExtraction) {
+        PipelineSpec spec = new PipelineSpec();
+        StageSpec blur = stage("blur");
+        blur.blurType = "median";
+        blur.radius = 0;
+        StageSpec threshold = stage("hsvThreshold");
+        threshold.hue = new double[] {59.89208633093524, 92.12121212121212};
+        threshold.saturation = new double[] {158.22841726618705, 255.0};
+        threshold.value = new double[] {91.72661870503596, 255.0};
+        StageSpec dilate = stage("dilate");
+        dilate.iterations = 1;
+        StageSpec blobs;
+        if ("components".equalsIgnoreCase(blobExtraction)) {
+            blobs = stage("connectedComponents");
+        } else {
+            if (blobExtraction != null && !"contours".equalsIgnoreCase(blobExtraction)) {
+                System.out.println("unknown blobExtraction '" + blobExtraction + "', using contours");
+            }
+            blobs = stage("findContours");
+            blobs.externalOnly = false;
+        }
+        spec.stages.add(blur);
+        spec.stages.add(threshold);
+        spec.stages.add(dilate);
+        spec.stages.add(blobs);
+        return spec;
+    }
+
+    /**
+     * The first stage with the given name, or null if there is none.
+     */
+    public StageSpec find(String name) {
+        for (StageSpec stage : stages) {
+            if (name.equals(stage.stage)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+
+    public static StageSpec stage(String name) {
+        StageSpec stage = new StageSpec();
+        stage.stage = name;
+        return stage;
+    }
+}
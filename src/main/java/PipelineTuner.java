@@ -0,0 +1,155 @@
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTable;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Live tuning of one camera's pipeline from NetworkTables, without restarting anything.
+ *
+ * <p>The HSV bounds, blur radius, dilate iterations and target filter limits are published
+ * in the camera's "tuning" table, starting from the config. When the dashboard changes any
+ * of them, the new pipeline and filter are built on this class's own thread, lookup table
+ * included, and handed to {@link PipelineWrapper#retune}, which the detection thread picks
+ * up between frames. Changes arriving together, such as a slider being dragged, are
+ * applied as one. The settings in use are logged as JSON for copying into frc.json.
+ */
+public class PipelineTuner {
+    private static final long settleMillis = 100;
+
+    private final String name;
+    private final PipelineWrapper pipeline;
+    private final NetworkTable table;
+    private final VisionConfig base;
+    private final Gson gson = new GsonBuilder().create();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Tuning");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    public PipelineTuner(String name, PipelineWrapper pipeline, NetworkTable table, VisionConfig config) {
+        this.name = name;
+        this.pipeline = pipeline;
+        this.table = table;
+        this.base = withPipeline(config);
+    }
+
+    /**
+     * Publish the starting values and listen for changes.
+     */
+    public void start() {
+        PipelineSpec.StageSpec threshold = base.pipeline.find("hsvThreshold");
+        PipelineSpec.StageSpec blur = base.pipeline.find("blur");
+        PipelineSpec.StageSpec dilate = base.pipeline.find("dilate");
+        table.getEntry("hueMin").setDouble(threshold.hue[0]);
+        table.getEntry("hueMax").setDouble(threshold.hue[1]);
+        table.getEntry("saturationMin").setDouble(threshold.saturation[0]);
+        table.getEntry("saturationMax").setDouble(threshold.saturation[1]);
+        table.getEntry("valueMin").setDouble(threshold.value[0]);
+        table.getEntry("valueMax").setDouble(threshold.value[1]);
+        table.getEntry("blurRadius").setDouble(blur != null ? blur.radius : 0);
+        table.getEntry("dilateIterations").setDouble(dilate != null ? dilate.iterations : 0);
+        table.getEntry("minArea").setDouble(base.minArea);
+        table.getEntry("maxArea").setDouble(base.maxArea);
+        table.getEntry("minAspectRatio").setDouble(base.minAspectRatio);
+        table.getEntry("maxAspectRatio").setDouble(base.maxAspectRatio);
+        table.getEntry("minFillRatio").setDouble(base.minFillRatio);
+        table.getEntry("maxFillRatio").setDouble(base.maxFillRatio);
+        table.getEntry("minSolidity").setDouble(base.minSolidity);
+        table.getEntry("maxSolidity").setDouble(base.maxSolidity);
+        table.addEntryListener((changed, key, entry, value, flags) -> changed(),
+                EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+    }
+
+    private void changed() {
+        // runs on the NetworkTables thread, so only schedule the work
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::apply, settleMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void apply() {
+        scheduled.set(false);
+        long start = System.nanoTime();
+        VisionConfig config = read();
+        try {
+            pipeline.retune(config);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Tuning on '" + name + "' ignored: " + e.getMessage());
+            return;
+        }
+        System.out.println(String.format(Locale.ROOT, "Tuning on '%s' built in %.0f ms: %s",
+                name, (System.nanoTime() - start) / 1e6, PipelinePlan.compile(config)));
+        System.out.println("    \"pipeline\": " + gson.toJson(config.pipeline));
+    }
+
+    /**
+     * A copy of the base config with the values in the table.
+     */
+    private VisionConfig read() {
+        VisionConfig config = gson.fromJson(gson.toJson(base), VisionConfig.class);
+        List<PipelineSpec.StageSpec> stages = config.pipeline.stages;
+        PipelineSpec.StageSpec threshold = config.pipeline.find("hsvThreshold");
+        threshold.hue = range("hue");
+        threshold.saturation = range("saturation");
+        threshold.value = range("value");
+
+        double radius = value("blurRadius", 0);
+        PipelineSpec.StageSpec blur = config.pipeline.find("blur");
+        if (blur == null && radius > 0) {
+            blur = PipelineSpec.stage("blur");
+            stages.add(0, blur);
+        }
+        if (blur != null) {
+            blur.radius = Math.max(0, radius);
+        }
+
+        int iterations = (int) value("dilateIterations", 0);
+        PipelineSpec.StageSpec dilate = config.pipeline.find("dilate");
+        if (dilate == null && iterations > 0) {
+            dilate = PipelineSpec.stage("dilate");
+            stages.add(stages.indexOf(threshold) + 1, dilate);
+        }
+        if (dilate != null) {
+            dilate.iterations = Math.max(0, iterations);
+        }
+
+        config.minArea = value("minArea", 0);
+        config.maxArea = value("maxArea", 0);
+        config.minAspectRatio = value("minAspectRatio", 0);
+        config.maxAspectRatio = value("maxAspectRatio", 0);
+        config.minFillRatio = value("minFillRatio", 0);
+        config.maxFillRatio = value("maxFillRatio", 0);
+        config.minSolidity = value("minSolidity", 0);
+        config.maxSolidity = value("maxSolidity", 0);
+        return config;
+    }
+
+    private double[] range(String key) {
+        return new double[] {value(key + "Min", 0), value(key + "Max", 255)};
+    }
+
+    private double value(String key, double defaultValue) {
+        return table.getEntry(key).getDouble(defaultValue);
+    }
+
+    /**
+     * A copy of the config with its pipeline spelled out, GRIP's if none was given.
+     */
+    private VisionConfig withPipeline(VisionConfig config) {
+        VisionConfig copy = gson.fromJson(gson.toJson(config), VisionConfig.class);
+        if (copy.pipeline == null) {
+            copy.pipeline = PipelineSpec.grip(copy.blobExtraction);
+        }
+        return copy;
+    }
+}
@@ -1,31 +1,526 @@
 import edu.wpi.first.vision.VisionPipeline;
+import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class PipelineWrapper implements VisionPipeline {
+    private static final int defaultFramePoolSize = 2;
+
     private GripPipeline gripPipeline;
-    private Mat sourceImage;
+    private int framePoolSize;
+    private FramePool framePool;
+    private Frame sourceFrame;
+    private VisionMetrics metrics = VisionMetrics.disabled();
+    private TargetFilter targetFilter = new TargetFilter(new VisionConfig());
+    private final ContourCandidates contourCandidates = new ContourCandidates();
+    private final ComponentCandidates componentCandidates = new ComponentCandidates();
+    private boolean needsContour = true;
+    private int maxTargets = 1;
+    private TargetScore targetScore = TargetScore.AREA;
+
+    // region-of-interest tracking around the last target
+    private boolean configuredRoiTracking;
+    private boolean roiTracking;
+    private double roiPadding;
+    private int roiMinPadding;
+    private boolean tracking;
+    private boolean usedRoi;
+    private boolean predicted;
+    private int sourceCols;
+    private int sourceRows;
+    private final Rect lastTarget = new Rect();
+    private final Rect roi = new Rect();
+    private final Scalar roiOffset = new Scalar(0, 0);
+
+    // coarse-to-fine search on a downscaled copy of the frame
+    private double configuredPyramidScale = 1.0;
+    private double pyramidScale = 1.0;
+    private final Mat coarseImage = MatTracker.newMat();
+    private final Size coarseSize = new Size();
+    private Rect[] candidates = new Rect[0];
+    private double[] candidateAreas = new double[0];
+    private final Frame candidateFrame = new Frame();
+
+    // cheaper search forced by the quality governor
+    private static final double reducedPyramidScale = 0.5;
+    private boolean reducedSearch;
+    private long lastProcessNanos;
+
+    // skip the pipeline on frames that look like the last processed one, reusing its result
+    private MotionGate motionGate;
+    private final Frame lastResult = new Frame();
+
+    // a pipeline and filter built for new settings, taken up at the start of the next frame
+    private final AtomicReference<Retuning> retuning = new AtomicReference<>();
 
     public PipelineWrapper(){
+        this(defaultFramePoolSize);
+    }
+
+    public PipelineWrapper(int framePoolSize){
         gripPipeline= new GripPipeline();
+        this.framePoolSize = framePoolSize;
+    }
+
+    public void setMetrics(VisionMetrics metrics){
+        this.metrics = metrics;
+        gripPipeline.setMetrics(metrics);
+    }
+
+    /**
+     * Apply the pipeline settings from the vision config.
+     */
+    public void configure(VisionConfig config){
+        targetFilter = new TargetFilter(config);
+        GripPipeline previous = gripPipeline;
+        gripPipeline = newGripPipeline(config);
+        previous.release();
+        gripPipeline.setMetrics(metrics);
+        maxTargets = Math.max(1, config.maxTargets);
+        targetScore = TargetScore.fromKey(config.targetScore);
+        candidateFrame.targets.setCapacity(maxTargets);
+        lastResult.targets.setCapacity(maxTargets);
+        if (motionGate != null) {
+            motionGate.release();
+        }
+        motionGate = config.motionThreshold > 0 ? new MotionGate(config) : null;
+        configuredRoiTracking = config.roiTracking;
+        roiPadding = config.roiPadding;
+        roiMinPadding = config.roiMinPadding;
+        configuredPyramidScale = config.pyramidScale;
+        setReducedSearch(reducedSearch);
+        candidates = new Rect[Math.max(1, config.pyramidCandidates)];
+        candidateAreas = new double[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = new Rect();
+        }
+    }
+
+    private static GripPipeline newGripPipeline(VisionConfig config){
+        GripPipeline pipeline = new GripPipeline(PipelinePlan.compile(config));
+        pipeline.useStrips(config.pipelineStrips);
+        if (config.hsvLookupTable) {
+            pipeline.useLookupTable(config.hsvLookupThreads);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Switch to new pipeline stages and target filter limits from the next frame on.
+     *
+     * <p>Everything is built on the calling thread, which should not be the detection
+     * thread: the lookup table alone can take a while. The frame in progress finishes with
+     * the old settings, and the detection thread only swaps them for the new ones between
+     * frames, without locking. The other settings in the config are ignored.
+     *
+     * @throws IllegalArgumentException if the config's pipeline stages are invalid
+     */
+    public void retune(VisionConfig config){
+        Retuning next = new Retuning(newGripPipeline(config), new TargetFilter(config));
+        Retuning superseded = retuning.getAndSet(next);
+        if (superseded != null) {
+            // never seen by the detection thread
+            superseded.pipeline.release();
+        }
+    }
+
+    private void takeRetuning(){
+        Retuning next = retuning.getAndSet(null);
+        if (next == null) {
+            return;
+        }
+        gripPipeline.release();
+        gripPipeline = next.pipeline;
+        gripPipeline.setMetrics(metrics);
+        targetFilter = next.filter;
+        if (motionGate != null) {
+            // the old result came from the old settings
+            motionGate.invalidate();
+        }
+    }
+
+    /**
+     * Whether the target's outline should be copied onto each frame, for drawing. Without
+     * it only the bounding box is kept, and with connected components no outline is traced
+     * unless a shape check needs one.
+     */
+    public void setNeedsContour(boolean needsContour){
+        this.needsContour = needsContour;
     }
 
     public VisionPipeline getPipeline(){
         return gripPipeline;
     }
 
+    /**
+     * The pool used by process(Mat), or null if that has not been called yet.
+     */
+    public FramePool getFramePool(){
+        return framePool;
+    }
+
+    /**
+     * The pooled copy of the last frame given to process(Mat). Valid until the next call.
+     */
     public Mat getSourceImage(){
-        return sourceImage;
+        return sourceFrame == null ? null : sourceFrame.image;
+    }
+
+    public Frame getSourceFrame(){
+        return sourceFrame;
     }
 
     public void process(Mat mat) {
-        sourceImage = mat.clone();
-        gripPipeline.process(mat);
+        if (framePool == null) {
+            framePool = new FramePool(framePoolSize);
+        }
+        // hand the previous frame back before leasing, so a pool of one is enough here
+        framePool.release(sourceFrame);
+        sourceFrame = framePool.lease();
+        if (sourceFrame == null) {
+            throw new IllegalStateException("no free frame buffers: " + framePool);
+        }
+        mat.copyTo(sourceFrame.image);
+        process(sourceFrame);
+    }
+
+    /**
+     * Run the pipeline on a frame in place and record the best targets on it.
+     *
+     * <p>With ROI tracking on and a target found in the last frame, only a padded region
+     * around it is searched. The whole frame is searched when there was no target, when
+     * the region has none, or when the target touches the region's edge and may extend
+     * past it. Other targets are then only listed if they are inside the region.
+     *
+     * <p>With motion gating on, a frame that looks like the last one processed is not
+     * searched at all; it gets that frame's targets, id and capture time as its result and
+     * is marked as reused.
+     *
+     * <p>With a pyramid scale below 1, that whole-frame search is coarse-to-fine: the
+     * pipeline runs on a downscaled copy to find candidates, and only the regions around
+     * the largest few are processed again at full resolution.
+     */
+    public void process(Frame frame) {
+        long start = System.nanoTime();
+        takeRetuning();
+        sourceCols = frame.image.cols();
+        sourceRows = frame.image.rows();
+        frame.targets.setCapacity(maxTargets);
+        boolean expected = predicted;
+        predicted = false;
+        frame.reused = false;
+        frame.resultId = frame.id;
+        frame.resultCaptureTime = frame.captureTime;
+        if (motionGate != null) {
+            long gateStart = metrics.start();
+            boolean unchanged = motionGate.isStatic(frame.image);
+            metrics.stop(VisionStage.MOTION, gateStart);
+            if (unchanged) {
+                frame.copyTargetFrom(lastResult);
+                frame.targets.copyFrom(lastResult.targets);
+                frame.reused = true;
+                frame.resultId = lastResult.id;
+                frame.resultCaptureTime = lastResult.captureTime;
+                lastProcessNanos = System.nanoTime() - start;
+                return;
+            }
+        }
+        // a target the tracker is still predicting is given the region alone, so a short
+        // dropout does not cost a full-frame search
+        usedRoi = roiTracking && tracking && (processRegion(frame) || (expected && !frame.hasTarget));
+        if (!usedRoi) {
+            if (pyramidScale < 1.0) {
+                processCoarseToFine(frame);
+            } else {
+                gripPipeline.process(frame.image);
+                select(frame, 0, 0);
+            }
+        }
+        tracking = frame.hasTarget;
+        if (tracking) {
+            lastTarget.x = (int) frame.x;
+            lastTarget.y = (int) frame.y;
+            lastTarget.width = (int) frame.width;
+            lastTarget.height = (int) frame.height;
+        }
+        if (motionGate != null) {
+            motionGate.processed();
+            lastResult.copyTargetFrom(frame);
+            lastResult.targets.copyFrom(frame.targets);
+            lastResult.id = frame.id;
+            lastResult.captureTime = frame.captureTime;
+        }
+        lastProcessNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Force ROI tracking and a coarse-to-fine search of at most half scale, whatever the
+     * config says, to save time.
+     */
+    public void setReducedSearch(boolean reducedSearch){
+        this.reducedSearch = reducedSearch;
+        roiTracking = configuredRoiTracking || reducedSearch;
+        pyramidScale = reducedSearch ? Math.min(configuredPyramidScale, reducedPyramidScale) : configuredPyramidScale;
+    }
+
+    /**
+     * How long the last process(Frame) call took.
+     */
+    public long getLastProcessNanos(){
+        return lastProcessNanos;
+    }
+
+    /**
+     * Search the next frame around where the tracker expects the target, even if it was
+     * not seen in this one.
+     */
+    public void predictTarget(double x, double y, double width, double height){
+        lastTarget.x = (int) x;
+        lastTarget.y = (int) y;
+        lastTarget.width = (int) Math.ceil(width);
+        lastTarget.height = (int) Math.ceil(height);
+        tracking = true;
+        predicted = true;
+    }
+
+    /**
+     * Whether the last frame was searched only around the previous target.
+     */
+    public boolean isTracking(){
+        return usedRoi;
+    }
+
+    private boolean processRegion(Frame frame) {
+        int cols = frame.image.cols();
+        int rows = frame.image.rows();
+        int padX = Math.max(roiMinPadding, (int) (lastTarget.width * roiPadding));
+        int padY = Math.max(roiMinPadding, (int) (lastTarget.height * roiPadding));
+        roi.x = Math.max(0, lastTarget.x - padX);
+        roi.y = Math.max(0, lastTarget.y - padY);
+        roi.width = Math.min(cols, lastTarget.x + lastTarget.width + padX) - roi.x;
+        roi.height = Math.min(rows, lastTarget.y + lastTarget.height + padY) - roi.y;
+        if (roi.width <= 0 || roi.height <= 0) {
+            frame.clearTarget();
+            return false;
+        }
+
+        Mat region = frame.image.submat(roi);
+        try {
+            gripPipeline.process(region);
+            select(frame, roi.x, roi.y);
+        } finally {
+            region.release();
+        }
+        return frame.hasTarget && !touchesRoiEdge(frame, cols, rows);
+    }
+
+    private void processCoarseToFine(Frame frame) {
+        int cols = frame.image.cols();
+        int rows = frame.image.rows();
+        coarseSize.width = Math.max(1, Math.round(cols * pyramidScale));
+        coarseSize.height = Math.max(1, Math.round(rows * pyramidScale));
+        Imgproc.resize(frame.image, coarseImage, coarseSize, 0, 0, Imgproc.INTER_AREA);
+        gripPipeline.process(coarseImage);
+        int found = collectCandidates(measureCandidates(), cols, rows);
+
+        frame.clearTarget();
+        TargetList targets = frame.targets;
+        double bestScore = 0;
+        for (int i = 0; i < found; i++) {
+            Rect region = candidates[i];
+            Mat candidate = frame.image.submat(region);
+            try {
+                gripPipeline.process(candidate);
+                select(candidateFrame, region.x, region.y);
+            } finally {
+                candidate.release();
+            }
+            if (!candidateFrame.hasTarget) {
+                continue;
+            }
+            // regions can overlap, so the same target may be refined twice
+            TargetList refined = candidateFrame.targets;
+            for (int k = 0; k < refined.count(); k++) {
+                if (!targets.contains(refined.x(k), refined.y(k), refined.width(k), refined.height(k))) {
+                    targets.offer(refined.score(k), refined.id(k), refined.area(k),
+                            refined.x(k), refined.y(k), refined.width(k), refined.height(k));
+                }
+            }
+            if (!frame.hasTarget || refined.score(0) > bestScore) {
+                frame.copyTargetFrom(candidateFrame);
+                bestScore = refined.score(0);
+            }
+        }
+        targets.sort();
+    }
+
+    /**
+     * Keep the largest coarse blobs that could pass the target filter at full resolution,
+     * as full resolution regions padded enough to hold what downscaling and dilation may
+     * have trimmed.
+     *
+     * @return the number of candidates found
+     */
+    private int collectCandidates(TargetCandidates blobs, int cols, int rows) {
+        int found = 0;
+        for (int i = 0; i < blobs.count(); i++) {
+            if (!targetFilter.acceptCoarse(blobs, i, pyramidScale)) {
+                continue;
+            }
+            double area = blobs.area(i);
+            int slot;
+            if (found < candidates.length) {
+                slot = found++;
+            } else if (area > candidateAreas[found - 1]) {
+                slot = found - 1; // replaces the smallest kept so far
+            } else {
+                continue;
+            }
+            // insertion sort, largest first
+            Rect rect = candidates[slot];
+            while (slot > 0 && candidateAreas[slot - 1] < area) {
+                candidateAreas[slot] = candidateAreas[slot - 1];
+                candidates[slot] = candidates[slot - 1];
+                slot--;
+            }
+            candidates[slot] = rect;
+            candidateAreas[slot] = area;
+            scaleUp(blobs.x(i), blobs.y(i), blobs.width(i), blobs.height(i), rect, cols, rows);
+        }
+        return found;
+    }
+
+    private void scaleUp(int x, int y, int width, int height, Rect full, int cols, int rows) {
+        int pad = (int) Math.ceil(1.0 / pyramidScale) + 2;
+        int x0 = Math.max(0, (int) Math.floor(x / pyramidScale) - pad);
+        int y0 = Math.max(0, (int) Math.floor(y / pyramidScale) - pad);
+        int x1 = Math.min(cols, (int) Math.ceil((x + width) / pyramidScale) + pad);
+        int y1 = Math.min(rows, (int) Math.ceil((y + height) / pyramidScale) + pad);
+        full.x = x0;
+        full.y = y0;
+        full.width = x1 - x0;
+        full.height = y1 - y0;
+    }
+
+    /**
+     * True if the target reaches an edge of the region that is not also an edge of the image.
+     */
+    private boolean touchesRoiEdge(Frame frame, int cols, int rows) {
+        return (frame.x <= roi.x && roi.x > 0)
+                || (frame.y <= roi.y && roi.y > 0)
+                || (frame.x + frame.width >= roi.x + roi.width && roi.x + roi.width < cols)
+                || (frame.y + frame.height >= roi.y + roi.height && roi.y + roi.height < rows);
+    }
+
+    private void select(Frame frame, int offsetX, int offsetY) {
+        long start = metrics.start();
+        targetFilter.setFrame(offsetX, offsetY, sourceCols, sourceRows);
+        selectTargets(frame, sourceCols / 2.0 - offsetX, sourceRows / 2.0 - offsetY);
+        if (frame.hasTarget && (offsetX != 0 || offsetY != 0)) {
+            // map region coordinates back to the full frame
+            frame.x += offsetX;
+            frame.y += offsetY;
+            frame.targets.offset(offsetX, offsetY);
+            if (frame.hasContour) {
+                roiOffset.val[0] = offsetX;
+                roiOffset.val[1] = offsetY;
+                Core.add(frame.targetContour(), roiOffset, frame.targetContour());
+            }
+        }
+        metrics.stop(VisionStage.SELECT, start);
+    }
+
+    /**
+     * Measure the blobs from the last pipeline run, whichever way they were extracted.
+     */
+    private TargetCandidates measureCandidates() {
+        if (gripPipeline.usesConnectedComponents()) {
+            componentCandidates.reset(gripPipeline.componentLabelsOutput(), gripPipeline.componentStatsOutput(),
+                    gripPipeline.componentCentroidsOutput(), gripPipeline.componentCount());
+            return componentCandidates;
+        }
+        contourCandidates.reset(gripPipeline.findContoursOutput());
+        return contourCandidates;
+    }
+
+    /**
+     * Keep the best scoring blobs that pass the target filter, the best as the main target.
+     *
+     * @param centerX the middle of the full frame, in the candidates' coordinates
+     */
+    private void selectTargets(Frame frame, double centerX, double centerY) {
+        TargetCandidates candidates = measureCandidates();
+        frame.clearTarget();
+        TargetList targets = frame.targets;
+        for (int i = 0; i < candidates.count(); i++) {
+            if (!targetFilter.accept(candidates, i)) {
+                continue;
+            }
+            targets.offer(targetScore.score(candidates, i, centerX, centerY), i, candidates.area(i),
+                    candidates.x(i), candidates.y(i), candidates.width(i), candidates.height(i));
+        }
+        targets.sort();
+
+        if (targets.count() > 0) {
+            int best = targets.id(0);
+            if (needsContour) {
+                // copy out, the pipeline releases its contours on the next frame
+                MatOfPoint contour = candidates.contour(best);
+                contour.copyTo(frame.targetContour());
+                frame.hasContour = !contour.empty();
+            }
+            frame.hasTarget = true;
+            frame.area = targets.area(0);
+            frame.x = candidates.x(best);  // Not wrong
+            frame.y = candidates.y(best); // Not wrong
+            frame.width = candidates.width(best);
+            frame.height = candidates.height(best);
+        }
+    }
+
+    /**
+     * Free every native buffer the pipeline owns, including its frame pool's. The pipeline
+     * must not be used afterwards.
+     */
+    public void release(){
+        gripPipeline.release();
+        Retuning pending = retuning.getAndSet(null);
+        if (pending != null) {
+            pending.pipeline.release();
+        }
+        contourCandidates.release();
+        componentCandidates.release();
+        candidateFrame.release();
+        lastResult.release();
+        if (motionGate != null) {
+            motionGate.release();
+        }
+        MatTracker.release(coarseImage);
+        if (framePool != null) {
+            framePool.release(sourceFrame);
+            sourceFrame = null;
+            framePool.releaseBuffers();
+        }
     }
 
     public ArrayList<MatOfPoint> findContoursOutput(){
         return gripPipeline.findContoursOutput();
     }
-}
\ No newline at end of file
+
+    private static final class Retuning {
+        final GripPipeline pipeline;
+        final TargetFilter filter;
+
+        Retuning(GripPipeline pipeline, TargetFilter filter) {
+            this.pipeline = pipeline;
+            this.filter = filter;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import edu.wpi.cscore.VideoMode;
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+
+import java.util.Locale;
+
+/**
+ * Keeps one camera's processing time inside its deadline by trading quality for time.
+ *
+ * <p>After every frame the pipeline's processing time is checked against the deadline.
+ * A few misses within a window step quality down one level, and enough whole windows well
+ * inside the deadline step it back up. Each level keeps the cuts of the ones before it:
+ *
+ * <ol>
+ * <li>stream the camera image without drawing targets on it</li>
+ * <li>stream at half the frame rate</li>
+ * <li>search only around the last target, and coarse-to-fine at half scale otherwise</li>
+ * <li>halve the camera resolution</li>
+ * </ol>
+ *
+ * <p>Stepping up takes two good windows at first. When a level reached by stepping up
+ * misses its deadline before it has lasted that many windows again, the number doubles,
+ * up to 32, so a camera that sits on the edge of its deadline settles instead of
+ * switching levels (and, at the lowest, reconnecting the camera) every few windows. Once
+ * a step up holds, the number goes back to two.
+ *
+ * <p>At half resolution, targets are scaled back to full-resolution pixels by
+ * {@link #toFullResolution} before they are published, so the coordinates mean the same
+ * thing at every level.
+ *
+ * <p>The current level is published as "qosLevel" in the camera's table, 0 being full
+ * quality. Runs on the detection thread, after the pipeline.
+ */
+public class QualityGovernor {
+    public static final int fullQuality = 0;
+    public static final int noOverlay = 1;
+    public static final int lowStreamFps = 2;
+    public static final int reducedSearch = 3;
+    public static final int lowResolution = 4;
+
+    private static final int missesToStepDown = 3;
+    private static final double stepUpHeadroom = 0.7;
+    private static final int minStepUpWindows = 2;
+    private static final int maxStepUpWindows = 32;
+
+    private final String name;
+    private final PipelineWrapper pipeline;
+    private final AnnotatedStream stream;
+    private final VideoSource camera;
+    private final NetworkTableEntry levelEntry;
+    private final long deadlineNanos;
+    private final int window;
+    private final int maxLevel;
+    private final VideoMode fullMode;
+
+    private int level = fullQuality;
+    private boolean lowResolutionSet;
+    private int frames;
+    private int misses;
+    private long slowest;
+    private int goodWindows;
+    private int stepUpWindows = minStepUpWindows;
+    // windows a level reached by stepping up must last before the step counts as held
+    private int probation;
+
+    public QualityGovernor(String name, PipelineWrapper pipeline, AnnotatedStream stream, VideoSource camera,
+                           NetworkTable table, VisionConfig config) {
+        this.name = name;
+        this.pipeline = pipeline;
+        this.stream = stream;
+        this.camera = camera;
+        this.levelEntry = table.getEntry("qosLevel");
+        this.deadlineNanos = (long) (config.deadlineMillis * 1e6);
+        this.window = Math.max(missesToStepDown, config.qosWindowFrames);
+        this.fullMode = camera.getVideoMode();
+        int max = Math.min(lowResolution, Math.max(fullQuality, config.qosMaxLevel));
+        if (max == lowResolution && (fullMode == null || fullMode.width < 2 || fullMode.height < 2)) {
+            max = reducedSearch;
+        }
+        this.maxLevel = max;
+        levelEntry.setDouble(level);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Account for the frame the pipeline just processed.
+     */
+    public void frameProcessed() {
+        long elapsed = pipeline.getLastProcessNanos();
+        frames++;
+        slowest = Math.max(slowest, elapsed);
+        if (elapsed > deadlineNanos) {
+            misses++;
+            if (misses >= missesToStepDown && level < maxLevel) {
+                if (probation > 0) {
+                    // the step up did not hold, so wait longer before the next one
+                    stepUpWindows = Math.min(maxStepUpWindows, stepUpWindows * 2);
+                    probation = 0;
+                }
+                goodWindows = 0;
+                setLevel(level + 1);
+                return;
+            }
+        }
+        if (frames >= window) {
+            goodWindows = slowest < deadlineNanos * stepUpHeadroom ? goodWindows + 1 : 0;
+            if (probation > 0 && --probation == 0) {
+                stepUpWindows = minStepUpWindows;
+            }
+            if (goodWindows >= stepUpWindows && level > fullQuality) {
+                goodWindows = 0;
+                probation = stepUpWindows;
+                setLevel(level - 1);
+            } else {
+                resetWindow();
+            }
+        }
+    }
+
+    /**
+     * Scale a frame's targets to full-resolution pixels if it was captured at the lowered
+     * resolution. Only the published values are scaled, not the outline.
+     *
+     * @return the factor the targets were scaled by, 1 for a full-resolution frame
+     */
+    public double toFullResolution(Frame frame) {
+        int cols = frame.image.cols();
+        if (fullMode == null || cols <= 0 || cols >= fullMode.width) {
+            return 1;
+        }
+        double scale = (double) fullMode.width / cols;
+        frame.scaleTargets(scale);
+        return scale;
+    }
+
+    private void setLevel(int newLevel) {
+        System.out.println(String.format(Locale.ROOT,
+                "Quality on '%s' %s to level %d, slowest frame %.1f ms against a %.1f ms deadline, "
+                        + "%d good windows to step up",
+                name, newLevel > level ? "down" : "up", newLevel, slowest / 1e6, deadlineNanos / 1e6, stepUpWindows));
+        level = newLevel;
+        stream.setOverlay(level < noOverlay);
+        stream.setFpsDivisor(level >= lowStreamFps ? 2 : 1);
+        pipeline.setReducedSearch(level >= reducedSearch);
+        boolean low = level >= lowResolution;
+        if (low != lowResolutionSet) {
+            // the camera reconnects to change mode, so only touch it when crossing this level
+            lowResolutionSet = low;
+            camera.setResolution(low ? fullMode.width / 2 : fullMode.width, low ? fullMode.height / 2 : fullMode.height);
+        }
+        levelEntry.setDouble(level);
+        // give the new level a full window before judging it
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        frames = 0;
+        misses = 0;
+        slowest = 0;
+    }
+}
@@ -0,0 +1,251 @@
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.videoio.VideoCapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Runs recorded footage through the pipeline with no cameras, streams or NetworkTables.
+ *
+ * <p>The input is either a directory of images, processed in name order, or a video file.
+ * Each frame's target is written as a CSV row, followed by a summary of the overall
+ * throughput.
+ *
+ * <p>In compare mode every frame is also run through a reference pipeline with ROI tracking
+ * and coarse-to-fine search turned off, and the accuracy of the configured pipeline against
+ * it is reported.
+ */
+public final class ReplayRunner {
+    private final String input;
+    private final double fps;
+    private final String outputFile;
+    private final PipelineWrapper pipeline = new PipelineWrapper();
+    private final Frame frame = new Frame();
+    private final PipelineWrapper reference;
+    private final Frame referenceFrame = new Frame();
+
+    private File[] images;
+    private int nextImage;
+    private VideoCapture video;
+
+    /**
+     * @param fps frames per second to replay at, or 0 to go as fast as possible
+     */
+    public ReplayRunner(String input, double fps, String outputFile, VisionConfig visionConfig, boolean compare) {
+        this.input = input;
+        this.fps = fps;
+        this.outputFile = outputFile;
+        pipeline.configure(visionConfig);
+        pipeline.setNeedsContour(false);
+        if (compare) {
+            reference = new PipelineWrapper();
+            reference.configure(referenceConfig(visionConfig));
+            reference.setNeedsContour(false);
+        } else {
+            reference = null;
+        }
+    }
+
+    /**
+     * The same settings with every shortcut turned off: ROI tracking, coarse-to-fine search,
+     * motion gating, the lookup table threshold and strips.
+     */
+    private static VisionConfig referenceConfig(VisionConfig visionConfig) {
+        Gson gson = new GsonBuilder().create();
+        VisionConfig config = gson.fromJson(gson.toJson(visionConfig), VisionConfig.class);
+        config.roiTracking = false;
+        config.pyramidScale = 1.0;
+        config.motionThreshold = 0;
+        config.hsvLookupTable = false;
+        config.pipelineStrips = 1;
+        return config;
+    }
+
+    /**
+     * Replay every frame.
+     *
+     * @return false if the input could not be opened
+     */
+    public boolean run() throws IOException {
+        if (!open()) {
+            return false;
+        }
+        System.out.println("Replaying '" + input + "' into '" + outputFile + "'");
+
+        long periodNanos = fps > 0 ? (long) (1e9 / fps) : 0;
+        long frames = 0;
+        long processNanos = 0;
+        Accuracy accuracy = new Accuracy();
+        long start = System.nanoTime();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(outputFile)))) {
+            out.print("frame,hasTarget,area,x,y,width,height,processMs,tracking");
+            out.println(reference == null ? "" : ",refHasTarget,refArea,refX,refY,refWidth,refHeight,refProcessMs,iou");
+            while (read(frame.image)) {
+                long frameStart = System.nanoTime();
+                frame.id = frames;
+                pipeline.process(frame);
+                long elapsed = System.nanoTime() - frameStart;
+                processNanos += elapsed;
+                writeRow(out, frame, elapsed, pipeline.isTracking());
+                if (reference != null) {
+                    frame.image.copyTo(referenceFrame.image);
+                    long referenceStart = System.nanoTime();
+                    reference.process(referenceFrame);
+                    long referenceElapsed = System.nanoTime() - referenceStart;
+                    accuracy.add(frame, referenceFrame, referenceElapsed);
+                    out.printf(Locale.ROOT, ",%b,%.1f,%.0f,%.0f,%.0f,%.0f,%.3f,%.3f",
+                            referenceFrame.hasTarget, referenceFrame.area, referenceFrame.x, referenceFrame.y,
+                            referenceFrame.width, referenceFrame.height, referenceElapsed / 1e6,
+                            iou(frame, referenceFrame));
+                }
+                out.println();
+                frames++;
+
+                if (periodNanos > 0) {
+                    long wait = start + frames * periodNanos - System.nanoTime();
+                    if (wait > 0) {
+                        sleepNanos(wait);
+                    }
+                }
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            String summary = String.format(Locale.ROOT,
+                    "frames=%d seconds=%.3f fps=%.1f meanProcessMs=%.3f",
+                    frames, seconds, frames / seconds, frames == 0 ? 0.0 : processNanos / 1e6 / frames);
+            out.println("# " + summary);
+            System.out.println("Replay done: " + summary);
+            if (reference != null) {
+                String comparison = accuracy.summary(frames);
+                out.println("# " + comparison);
+                System.out.println("Against full resolution: " + comparison);
+            }
+        } finally {
+            close();
+            pipeline.release();
+            frame.release();
+            if (reference != null) {
+                reference.release();
+                referenceFrame.release();
+            }
+        }
+        if (MatTracker.isDebug() && MatTracker.liveCount() > 0) {
+            System.out.println("Native Mats still live after replay:");
+            System.out.print(MatTracker.report());
+        }
+        return true;
+    }
+
+    private boolean open() {
+        File source = new File(input);
+        if (source.isDirectory()) {
+            images = source.listFiles((dir, name) -> isImage(name));
+            if (images == null || images.length == 0) {
+                System.err.println("no images in '" + input + "'");
+                return false;
+            }
+            Arrays.sort(images);
+            return true;
+        }
+        video = new VideoCapture(input);
+        if (!video.isOpened()) {
+            System.err.println("could not open video '" + input + "'");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean read(Mat into) {
+        if (video != null) {
+            return video.read(into) && !into.empty();
+        }
+        while (nextImage < images.length) {
+            Mat image = Imgcodecs.imread(images[nextImage++].getPath());
+            if (!image.empty()) {
+                image.copyTo(into);
+                image.release();
+                return true;
+            }
+            System.err.println("could not read '" + images[nextImage - 1] + "', skipping");
+        }
+        return false;
+    }
+
+    private void close() {
+        if (video != null) {
+            video.release();
+        }
+    }
+
+    private static boolean isImage(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png") || lower.endsWith(".bmp");
+    }
+
+    private static void writeRow(PrintWriter out, Frame frame, long elapsedNanos, boolean tracking) {
+        out.printf(Locale.ROOT, "%d,%b,%.1f,%.0f,%.0f,%.0f,%.0f,%.3f,%b",
+                frame.id, frame.hasTarget, frame.area, frame.x, frame.y, frame.width, frame.height,
+                elapsedNanos / 1e6, tracking);
+    }
+
+    /**
+     * Intersection over union of the two target rects, 1 if neither has a target.
+     */
+    private static double iou(Frame a, Frame b) {
+        if (!a.hasTarget || !b.hasTarget) {
+            return a.hasTarget == b.hasTarget ? 1.0 : 0.0;
+        }
+        double ix = Math.max(0, Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x));
+        double iy = Math.max(0, Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y));
+        double intersection = ix * iy;
+        double union = a.width * a.height + b.width * b.height - intersection;
+        return union <= 0 ? 0.0 : intersection / union;
+    }
+
+    private static final class Accuracy {
+        private long agreed;
+        private long bothFound;
+        private double iouSum;
+        private double areaErrorSum;
+        private long referenceNanos;
+
+        void add(Frame frame, Frame reference, long referenceElapsed) {
+            referenceNanos += referenceElapsed;
+            if (frame.hasTarget == reference.hasTarget) {
+                agreed++;
+            }
+            if (frame.hasTarget && reference.hasTarget) {
+                bothFound++;
+                iouSum += iou(frame, reference);
+                if (reference.area > 0) {
+                    areaErrorSum += Math.abs(frame.area - reference.area) / reference.area;
+                }
+            }
+        }
+
+        String summary(long frames) {
+            return String.format(Locale.ROOT,
+                    "detectionAgreement=%.1f%% meanIou=%.3f meanAreaError=%.2f%% refMeanProcessMs=%.3f",
+                    frames == 0 ? 0.0 : 100.0 * agreed / frames,
+                    bothFound == 0 ? 0.0 : iouSum / bothFound,
+                    bothFound == 0 ? 0.0 : 100.0 * areaErrorSum / bothFound,
+                    frames == 0 ? 0.0 : referenceNanos / 1e6 / frames);
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Publishes each frame's target as a single NetworkTables entry.
+ *
+ * <p>The "target" entry is a double array, written in one call so the robot never sees
+ * values from two different frames:
+ *
+ * <pre>
+ * [0] id of the frame the target was measured on
+ * [1] that frame's capture timestamp, microseconds on the camera server clock
+ * [2] that frame's age when published, microseconds
+ * [3] 1 if a target was found, 2 if it is only predicted by the tracker, else 0
+ * [4] area   [5] x   [6] y   [7] width   [8] height
+ * [9] 1 if motion gating skipped the newest frame and the target is the last processed
+ *     frame's, else 0
+ * </pre>
+ *
+ * <p>With more than one target configured, the best targets follow as a count and then
+ * exactly maxTargets slots, so the entry is the same length every frame however many
+ * blobs were seen. Slots past the count are zero:
+ *
+ * <pre>
+ * [10] number of valid slots
+ * [11 + 5k] area   [12 + 5k] x   [13 + 5k] y   [14 + 5k] width   [15 + 5k] height
+ * </pre>
+ *
+ * <p>A result is skipped when it is within epsilon of the last one published, unless the
+ * heartbeat interval has passed, and results are never published faster than the
+ * configured rate. Each write is flushed straight away.
+ */
+public class ResultPublisher {
+    private static final int resultFields = 5;
+    private static final int reusedIndex = 4 + resultFields;
+    private static final int targetsOffset = reusedIndex + 1;
+
+    private final NetworkTableInstance ntinst;
+    private final NetworkTableEntry targetEntry;
+    private final VisionMetrics metrics;
+    private final double epsilon;
+    private final long minIntervalMicros;
+    private final long heartbeatMicros;
+    private final int maxTargets;
+    private final double[] packed;
+    private final double[] lastPublished;
+    private long lastPublishTime = Long.MIN_VALUE / 2;
+    private boolean published;
+
+    public ResultPublisher(NetworkTableInstance ntinst, NetworkTable table, VisionMetrics metrics, VisionConfig config) {
+        this.ntinst = ntinst;
+        this.targetEntry = table.getEntry("target");
+        this.metrics = metrics;
+        this.epsilon = config.publishEpsilon;
+        this.minIntervalMicros = config.publishRateHz > 0 ? (long) (1e6 / config.publishRateHz) : 0;
+        this.heartbeatMicros = (long) (config.publishHeartbeatSeconds * 1e6);
+        this.maxTargets = Math.max(1, config.maxTargets);
+        int length = targetsOffset;
+        if (maxTargets > 1) {
+            length += 1 + TargetList.packedLength(maxTargets);
+        }
+        packed = new double[length];
+        lastPublished = new double[length - 3];
+    }
+
+    public void publish(Frame frame) {
+        long start = metrics.start();
+        long now = VisionClock.nowMicros();
+        long sinceLast = now - lastPublishTime;
+        if (sinceLast < minIntervalMicros) {
+            return;
+        }
+
+        packed[3] = frame.hasTarget ? (frame.coasting ? 2 : 1) : 0;
+        packed[4] = frame.area;
+        packed[5] = frame.x;
+        packed[6] = frame.y;
+        packed[7] = frame.width;
+        packed[8] = frame.height;
+        packed[reusedIndex] = frame.reused ? 1 : 0;
+        if (maxTargets > 1) {
+            packed[targetsOffset] = frame.targets.count();
+            frame.targets.pack(packed, targetsOffset + 1);
+        }
+        if (published && sinceLast < heartbeatMicros && unchanged()) {
+            return;
+        }
+
+        packed[0] = frame.resultId;
+        packed[1] = frame.resultCaptureTime;
+        packed[2] = VisionClock.ageMicros(frame.resultCaptureTime);
+        targetEntry.setDoubleArray(packed);
+        ntinst.flush();
+
+        System.arraycopy(packed, 3, lastPublished, 0, lastPublished.length);
+        lastPublishTime = now;
+        published = true;
+        metrics.stop(VisionStage.PUBLISH, start);
+    }
+
+    private boolean unchanged() {
+        if (packed[3] != lastPublished[0] || packed[reusedIndex] != lastPublished[reusedIndex - 3]) {
+            return false;
+        }
+        for (int i = 1; i < lastPublished.length; i++) {
+            if (Math.abs(packed[3 + i] - lastPublished[i]) > epsilon) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
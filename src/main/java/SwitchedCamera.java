@@ -0,0 +1,102 @@
+import edu.wpi.cscore.MjpegServer;
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.cameraserver.CameraServer;
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTablesJNI;
+import edu.wpi.first.networktables.NetworkTableValue;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A camera stream that shows whichever real camera its NetworkTables key selects, with
+ * that camera's target published alongside it.
+ *
+ * <p>The key holds a camera name, or a number taken as an index into the cameras. Every
+ * camera is kept open and processed all the time, so switching only points the stream at
+ * another source and changes which camera's results are relayed; no device is reopened.
+ * The relayed target goes to SNIP/&lt;switched camera name&gt; in the same "target"
+ * format as the cameras' own tables, with the selected camera's name in "selected".
+ *
+ * <p>The time from a switch to the first result from a frame captured after it is
+ * published as "switchLatencyMs" and logged.
+ */
+public class SwitchedCamera {
+    private final String name;
+    private final List<VideoSource> cameras;
+    private final List<String> cameraNames;
+    private final MjpegServer server;
+    private final ResultPublisher publisher;
+    private final NetworkTableEntry selectedEntry;
+    private final NetworkTableEntry latencyEntry;
+
+    private volatile int selected = -1;
+    private volatile long switchTime; // on cscore's and NetworkTables' clock, in microseconds
+    private boolean awaitingFrame;
+
+    public SwitchedCamera(SwitchedCameraConfig config, NetworkTableInstance ntinst, List<VideoSource> cameras,
+                          List<String> cameraNames, VisionConfig visionConfig) {
+        this.name = config.name;
+        this.cameras = cameras;
+        this.cameraNames = cameraNames;
+        System.out.println("Starting switched camera '" + name + "' on " + config.key);
+        server = CameraServer.getInstance().addSwitchedCamera(name);
+        NetworkTable table = ntinst.getTable("SNIP/" + name);
+        publisher = new ResultPublisher(ntinst, table, VisionMetrics.disabled(), visionConfig);
+        selectedEntry = table.getEntry("selected");
+        latencyEntry = table.getEntry("switchLatencyMs");
+        ntinst.getEntry(config.key).addListener(event -> select(event.value),
+                EntryListenerFlags.kImmediate | EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+    }
+
+    private void select(NetworkTableValue value) {
+        int index = -1;
+        if (value.isDouble()) {
+            index = (int) value.getDouble();
+        } else if (value.isString()) {
+            index = cameraNames.indexOf(value.getString());
+        }
+        if (index < 0 || index >= cameras.size() || cameras.get(index) == null) {
+            System.out.println("Switched camera '" + name + "': no camera " + value.getValue());
+            return;
+        }
+        if (index == selected) {
+            return;
+        }
+        server.setSource(cameras.get(index));
+        synchronized (this) {
+            // cscore stamps frames on this clock, so the two compare directly
+            switchTime = NetworkTablesJNI.now();
+            awaitingFrame = true;
+            selected = index;
+        }
+        selectedEntry.setString(cameraNames.get(index));
+    }
+
+    /**
+     * Relay a camera's result if it is the selected one. Called on that camera's
+     * detection thread.
+     */
+    public void publish(int index, Frame frame) {
+        if (index != selected) {
+            return;
+        }
+        // two cameras can both get here around a switch
+        synchronized (this) {
+            if (index != selected) {
+                return;
+            }
+            if (awaitingFrame && frame.captureTime >= switchTime) {
+                awaitingFrame = false;
+                double latencyMillis = (NetworkTablesJNI.now() - switchTime) / 1000.0;
+                latencyEntry.setDouble(latencyMillis);
+                System.out.println(String.format(Locale.ROOT, "Switched camera '%s' to '%s', first result in %.1f ms",
+                        name, cameraNames.get(index), latencyMillis));
+            }
+            publisher.publish(frame);
+        }
+    }
+}
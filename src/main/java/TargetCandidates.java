@@ -0,0 +1,29 @@
+import org.opencv.core.MatOfPoint;
+
+/**
+ * Blobs found in a frame, with each measurement computed at most once and only on request.
+ *
+ * <p>Bounding boxes are cheap, areas cost a pass over the outline and hull areas cost a
+ * convex hull, so callers should ask for them in that order and stop as soon as they can.
+ */
+public interface TargetCandidates {
+    int count();
+
+    int x(int i);
+
+    int y(int i);
+
+    int width(int i);
+
+    int height(int i);
+
+    double area(int i);
+
+    double hullArea(int i);
+
+    /**
+     * The candidate's outline, in the same coordinates as its bounding box. Only valid
+     * until the next frame, so copy it out to keep it.
+     */
+    MatOfPoint contour(int i);
+}
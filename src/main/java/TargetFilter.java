@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Configurable chain of target checks, run cheapest first.
+ *
+ * <p>Checks that only need the bounding box run before those that need the contour area,
+ * which run before those that need the convex hull. A candidate is rejected at the first
+ * failed check, so noise blobs rarely cost more than a bounding box. Limits of 0 are off.
+ *
+ * <p>Blobs from a downscaled frame get looser versions of the area, aspect ratio and fill
+ * checks, which allow for each edge of the blob being a couple of pixels off where it is at
+ * full resolution. They only rule out blobs the full-resolution checks would certainly
+ * reject.
+ */
+public class TargetFilter {
+    private static final int boundsCost = 0;
+    private static final int areaCost = 1;
+    private static final int hullCost = 2;
+    // how far, in downscaled pixels, a downscaled blob's edges may be from the true ones
+    private static final int coarseMargin = 2;
+
+    private final Check[] checks;
+    private final Check[] coarseChecks;
+    private double coarseScale = 1;
+    private int offsetX;
+    private int offsetY;
+    private double frameWidth = 1;
+    private double frameHeight = 1;
+
+    public TargetFilter(VisionConfig config) {
+        List<Check> list = new ArrayList<>();
+        List<Check> coarse = new ArrayList<>();
+        double minArea = config.minArea;
+        double maxArea = config.maxArea;
+        if (minArea > 0) {
+            // the contour can be no larger than its bounding box
+            list.add(new Check(boundsCost, (c, i) -> (double) c.width(i) * c.height(i) >= minArea));
+            list.add(new Check(areaCost, (c, i) -> c.area(i) >= minArea));
+            coarse.add(new Check(boundsCost, (c, i) ->
+                    (double) (c.width(i) + coarseMargin) * (c.height(i) + coarseMargin)
+                            >= minArea * coarseScale * coarseScale));
+        }
+        if (maxArea > 0) {
+            list.add(new Check(areaCost, (c, i) -> c.area(i) <= maxArea));
+        }
+        if (config.minAspectRatio > 0 || config.maxAspectRatio > 0) {
+            double min = config.minAspectRatio;
+            double max = config.maxAspectRatio > 0 ? config.maxAspectRatio : Double.MAX_VALUE;
+            list.add(new Check(boundsCost, (c, i) -> inRange((double) c.width(i) / c.height(i), min, max)));
+            coarse.add(new Check(boundsCost, (c, i) ->
+                    (double) (c.width(i) + coarseMargin) / Math.max(1, c.height(i) - coarseMargin) >= min
+                            && (double) Math.max(1, c.width(i) - coarseMargin) / (c.height(i) + coarseMargin) <= max));
+        }
+        if (config.minCenterX > 0 || config.maxCenterX > 0 || config.minCenterY > 0 || config.maxCenterY > 0) {
+            double minX = config.minCenterX;
+            double maxX = config.maxCenterX > 0 ? config.maxCenterX : 1;
+            double minY = config.minCenterY;
+            double maxY = config.maxCenterY > 0 ? config.maxCenterY : 1;
+            list.add(new Check(boundsCost, (c, i) ->
+                    inRange((offsetX + c.x(i) + c.width(i) / 2.0) / frameWidth, minX, maxX)
+                            && inRange((offsetY + c.y(i) + c.height(i) / 2.0) / frameHeight, minY, maxY)));
+        }
+        if (config.minFillRatio > 0 || config.maxFillRatio > 0) {
+            double min = config.minFillRatio;
+            double max = config.maxFillRatio > 0 ? config.maxFillRatio : 1;
+            list.add(new Check(areaCost, (c, i) -> inRange(c.area(i) / ((double) c.width(i) * c.height(i)), min, max)));
+            coarse.add(new Check(areaCost, (c, i) -> {
+                // moving every edge by the margin changes the area by up to the margin times the perimeter
+                double slack = coarseMargin * 2.0 * (c.width(i) + c.height(i));
+                double most = (c.area(i) + slack)
+                        / ((double) Math.max(1, c.width(i) - coarseMargin) * Math.max(1, c.height(i) - coarseMargin));
+                double least = (c.area(i) - slack)
+                        / ((double) (c.width(i) + coarseMargin) * (c.height(i) + coarseMargin));
+                return most >= min && least <= max;
+            }));
+        }
+        if (config.minSolidity > 0 || config.maxSolidity > 0) {
+            double min = config.minSolidity;
+            double max = config.maxSolidity > 0 ? config.maxSolidity : 1;
+            list.add(new Check(hullCost, (c, i) -> {
+                double hullArea = c.hullArea(i);
+                return hullArea > 0 && inRange(c.area(i) / hullArea, min, max);
+            }));
+        }
+        list.sort(Comparator.comparingInt(check -> check.cost));
+        checks = list.toArray(new Check[0]);
+        coarse.sort(Comparator.comparingInt(check -> check.cost));
+        coarseChecks = coarse.toArray(new Check[0]);
+    }
+
+    /**
+     * Where the candidates' region sits in the full frame, for position checks.
+     */
+    public void setFrame(int offsetX, int offsetY, int frameWidth, int frameHeight) {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.frameWidth = Math.max(1, frameWidth);
+        this.frameHeight = Math.max(1, frameHeight);
+    }
+
+    public boolean isEmpty() {
+        return checks.length == 0;
+    }
+
+    public boolean accept(TargetCandidates candidates, int i) {
+        return passes(checks, candidates, i);
+    }
+
+    /**
+     * Whether a blob found in a frame downscaled by the given factor could still pass at
+     * full resolution.
+     */
+    public boolean acceptCoarse(TargetCandidates candidates, int i, double scale) {
+        coarseScale = scale;
+        return passes(coarseChecks, candidates, i);
+    }
+
+    private static boolean passes(Check[] checks, TargetCandidates candidates, int i) {
+        for (Check check : checks) {
+            if (!check.test.test(candidates, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean inRange(double value, double min, double max) {
+        return value >= min && value <= max;
+    }
+
+    private interface CandidateTest {
+        boolean test(TargetCandidates candidates, int i);
+    }
+
+    private static final class Check {
+        final int cost;
+        final CandidateTest test;
+
+        Check(int cost, CandidateTest test) {
+            this.cost = cost;
+            this.test = test;
+        }
+    }
+}
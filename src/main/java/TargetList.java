@@ -0,0 +1,225 @@
+import java.util.Arrays;
+
+/**
+ * The best few targets in a frame, kept in a fixed-size min-heap on their scores.
+ *
+ * <p>All storage is preallocated for the capacity, so offering any number of candidates
+ * costs no allocation and at most a log(capacity) sift each. Call {@link #sort()} once the
+ * frame's candidates are in to read the targets back best first.
+ */
+public class TargetList {
+    private static final int fields = 5;
+    private static final int areaField = 0;
+    private static final int xField = 1;
+    private static final int yField = 2;
+    private static final int widthField = 3;
+    private static final int heightField = 4;
+
+    private int capacity;
+    private int count;
+    private double[] scores = new double[0];
+    private int[] ids = new int[0];
+    private double[] values = new double[0];
+
+    public TargetList(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Resize the list, dropping anything in it. Only allocates when the capacity changes.
+     */
+    public void setCapacity(int capacity) {
+        capacity = Math.max(1, capacity);
+        if (capacity != this.capacity) {
+            this.capacity = capacity;
+            scores = new double[capacity];
+            ids = new int[capacity];
+            values = new double[capacity * fields];
+        }
+        count = 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Keep the target if it scores better than the worst one kept, once the list is full.
+     *
+     * @param id the caller's index for the target, e.g. its candidate number
+     */
+    public void offer(double score, int id, double area, double x, double y, double width, double height) {
+        if (count < capacity) {
+            int slot = count++;
+            set(slot, score, id, area, x, y, width, height);
+            siftUp(slot);
+        } else if (score > scores[0]) {
+            set(0, score, id, area, x, y, width, height);
+            siftDown(0, count);
+        }
+    }
+
+    /**
+     * Order the targets best first. The list must not be offered to again until cleared.
+     */
+    public void sort() {
+        // heap sort on the min-heap leaves the scores in descending order
+        for (int end = count - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    /**
+     * Move every target, e.g. from region to full frame coordinates.
+     */
+    public void offset(double dx, double dy) {
+        for (int k = 0; k < count; k++) {
+            values[k * fields + xField] += dx;
+            values[k * fields + yField] += dy;
+        }
+    }
+
+    /**
+     * Scale every kept target's box by the factor, and its area by the factor squared.
+     */
+    public void scale(double factor) {
+        for (int k = 0; k < count; k++) {
+            values[k * fields + areaField] *= factor * factor;
+            values[k * fields + xField] *= factor;
+            values[k * fields + yField] *= factor;
+            values[k * fields + widthField] *= factor;
+            values[k * fields + heightField] *= factor;
+        }
+    }
+
+    /**
+     * Whether a target with exactly this bounding box is already kept.
+     */
+    public boolean contains(double x, double y, double width, double height) {
+        for (int k = 0; k < count; k++) {
+            int v = k * fields;
+            if (values[v + xField] == x && values[v + yField] == y
+                    && values[v + widthField] == width && values[v + heightField] == height) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public double score(int k) {
+        return scores[k];
+    }
+
+    public int id(int k) {
+        return ids[k];
+    }
+
+    public double area(int k) {
+        return values[k * fields + areaField];
+    }
+
+    public double x(int k) {
+        return values[k * fields + xField];
+    }
+
+    public double y(int k) {
+        return values[k * fields + yField];
+    }
+
+    public double width(int k) {
+        return values[k * fields + widthField];
+    }
+
+    public double height(int k) {
+        return values[k * fields + heightField];
+    }
+
+    /**
+     * Write every slot as area, x, y, width, height, zero filling those past the count.
+     */
+    public void pack(double[] into, int offset) {
+        int used = count * fields;
+        System.arraycopy(values, 0, into, offset, used);
+        Arrays.fill(into, offset + used, offset + capacity * fields, 0);
+    }
+
+    /**
+     * Copy another list's targets, as many as fit.
+     */
+    public void copyFrom(TargetList other) {
+        count = Math.min(capacity, other.count);
+        System.arraycopy(other.scores, 0, scores, 0, count);
+        System.arraycopy(other.ids, 0, ids, 0, count);
+        System.arraycopy(other.values, 0, values, 0, count * fields);
+    }
+
+    public static int packedLength(int capacity) {
+        return Math.max(1, capacity) * fields;
+    }
+
+    private void set(int slot, double score, int id, double area, double x, double y, double width, double height) {
+        scores[slot] = score;
+        ids[slot] = id;
+        int v = slot * fields;
+        values[v + areaField] = area;
+        values[v + xField] = x;
+        values[v + yField] = y;
+        values[v + widthField] = width;
+        values[v + heightField] = height;
+    }
+
+    private void siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            if (scores[parent] <= scores[slot]) {
+                return;
+            }
+            swap(parent, slot);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot, int size) {
+        for (;;) {
+            int smallest = slot;
+            int left = slot * 2 + 1;
+            int right = left + 1;
+            if (left < size && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < size && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == slot) {
+                return;
+            }
+            swap(slot, smallest);
+            slot = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        int va = a * fields;
+        int vb = b * fields;
+        for (int f = 0; f < fields; f++) {
+            double value = values[va + f];
+            values[va + f] = values[vb + f];
+            values[vb + f] = value;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * How targets are ranked when more than one is kept. Higher scores are better.
+ */
+public enum TargetScore {
+    // largest first
+    AREA("area"),
+    // most of the bounding box filled first
+    FILL("fill"),
+    // closest to the middle of the frame first
+    CENTER("center");
+
+    private final String key;
+
+    TargetScore(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The score named in the config, or AREA if it is not one of ours.
+     */
+    public static TargetScore fromKey(String key) {
+        for (TargetScore score : values()) {
+            if (score.key.equalsIgnoreCase(key)) {
+                return score;
+            }
+        }
+        if (key != null) {
+            System.out.println("unknown targetScore '" + key + "', using area");
+        }
+        return AREA;
+    }
+
+    /**
+     * Score one candidate. The centre is the frame's middle in the candidates' coordinates.
+     */
+    public double score(TargetCandidates candidates, int i, double centerX, double centerY) {
+        switch (this) {
+            case FILL:
+                return candidates.area(i) / ((double) candidates.width(i) * candidates.height(i));
+            case CENTER:
+                double dx = candidates.x(i) + candidates.width(i) / 2.0 - centerX;
+                double dy = candidates.y(i) + candidates.height(i) / 2.0 - centerY;
+                return -(dx * dx + dy * dy);
+            default:
+                return candidates.area(i);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Alpha-beta filter on the main target, predicting where it is when the result goes out.
+ *
+ * <p>Each measured target corrects the filtered centre and velocity and smooths the size.
+ * When a frame has no target the track coasts on its velocity for up to the coast time,
+ * so short dropouts do not reach the robot. A measurement too far from the prediction
+ * starts a new track rather than dragging the old one across.
+ *
+ * <p>The frame's box is replaced with the prediction for the moment it is published: the
+ * frame's age since capture, which includes the pipeline latency, plus a fixed lead for
+ * the trip to the robot.
+ */
+public class TargetTracker {
+    // a new measurement further than this many target sizes from the prediction is a new target
+    private static final double gate = 2.0;
+
+    private final double alpha;
+    private final double beta;
+    private final long coastMicros;
+    private final double leadSeconds;
+
+    private boolean tracking;
+    private long time; // capture time of the last measurement, microseconds
+    private double centerX;
+    private double centerY;
+    private double velocityX; // pixels per second
+    private double velocityY;
+    private double width;
+    private double height;
+    private double area;
+
+    public TargetTracker(VisionConfig config) {
+        this.alpha = config.trackerAlpha;
+        this.beta = config.trackerBeta;
+        this.coastMicros = (long) (config.trackerCoastSeconds * 1e6);
+        this.leadSeconds = config.trackerLeadSeconds;
+    }
+
+    /**
+     * Filter the frame's target and replace it with the prediction for now.
+     */
+    public void track(Frame frame) {
+        // a reused result was measured on an earlier frame, and has already been measured
+        long t = frame.resultCaptureTime;
+        if (frame.hasTarget && !frame.reused) {
+            measure(frame, t);
+        } else if (!tracking || t - time > coastMicros) {
+            tracking = false;
+            return;
+        }
+
+        double horizon = (VisionClock.frameClockMicros() - time) / 1e6 + leadSeconds;
+        frame.coasting = !frame.hasTarget;
+        frame.hasTarget = true;
+        frame.x = centerX + velocityX * horizon - width / 2;
+        frame.y = centerY + velocityY * horizon - height / 2;
+        frame.width = width;
+        frame.height = height;
+        frame.area = area;
+    }
+
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    private void measure(Frame frame, long t) {
+        double x = frame.x + frame.width / 2;
+        double y = frame.y + frame.height / 2;
+        double dt = (t - time) / 1e6;
+        if (!tracking || dt <= 0 || t - time > coastMicros) {
+            start(frame, x, y, t);
+            return;
+        }
+
+        double residualX = x - (centerX + velocityX * dt);
+        double residualY = y - (centerY + velocityY * dt);
+        double limit = gate * Math.max(frame.width, frame.height);
+        if (Math.abs(residualX) > limit || Math.abs(residualY) > limit) {
+            start(frame, x, y, t);
+            return;
+        }
+        centerX += velocityX * dt + alpha * residualX;
+        centerY += velocityY * dt + alpha * residualY;
+        velocityX += beta * residualX / dt;
+        velocityY += beta * residualY / dt;
+        width += alpha * (frame.width - width);
+        height += alpha * (frame.height - height);
+        area += alpha * (frame.area - area);
+        time = t;
+    }
+
+    private void start(Frame frame, double x, double y, long t) {
+        tracking = true;
+        time = t;
+        centerX = x;
+        centerY = y;
+        velocityX = 0;
+        velocityY = 0;
+        width = frame.width;
+        height = frame.height;
+        area = frame.area;
+    }
+}
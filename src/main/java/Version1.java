@@ -9,16 +9,17 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import edu.wpi.cscore.*;
 import edu.wpi.first.cameraserver.CameraServer;
-import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableInstance;
-import edu.wpi.first.vision.VisionThread;
-import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
-import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
+import edu.wpi.first.vision.VisionRunner;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public final class Version1 {
 
@@ -28,12 +29,19 @@ public final class Version1 {
     public int team;
     public boolean server;
     public List<CameraConfig> cameraConfigs;
+    public List<SwitchedCameraConfig> switchedCameraConfigs;
+    public VisionConfig visionConfig;
+    // set once every camera is up, read by the detection threads
+    private volatile SwitchedCamera[] switchedCameras = new SwitchedCamera[0];
 
-    public Version1(int team, boolean server, List<CameraConfig> cameraConfigs) {
+    public Version1(int team, boolean server, List<CameraConfig> cameraConfigs,
+                    List<SwitchedCameraConfig> switchedCameraConfigs, VisionConfig visionConfig) {
         this.team = team;
         this.server = server;
         this.cameraConfigs = cameraConfigs;
-        this.cameras = cameras = new ArrayList<>();
+        this.switchedCameraConfigs = switchedCameraConfigs;
+        this.visionConfig = visionConfig;
+        this.cameras = new ArrayList<>(Collections.nCopies(cameraConfigs.size(), null));
     }
 
     /**
@@ -50,22 +58,39 @@ public final class Version1 {
             ntinst.startClientTeam(team);
         }
 
-        // start cameras
-        for (CameraConfig config : cameraConfigs) {
-            cameras.add(startCamera(config));
+        // open every camera and build every pipeline at once, and start processing each
+        // camera as soon as both are ready instead of waiting for the slowest one
+        VisionScheduler scheduler = new VisionScheduler(cameraConfigs.size());
+        MetricsReporter metricsReporter = new MetricsReporter(ntinst, visionConfig.metricsPeriodSeconds);
+        ExecutorService bringUp = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Camera bring-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<?>[] started = new CompletableFuture<?>[cameraConfigs.size()];
+        for (int i = 0; i < cameraConfigs.size(); i++) {
+            int index = i;
+            var config = cameraConfigs.get(i);
+            var camera = CompletableFuture.supplyAsync(() -> startCamera(config), bringUp);
+            var pipeline = CompletableFuture.supplyAsync(this::newPipeline, bringUp);
+            started[i] = camera.thenAcceptBoth(pipeline, (source, wrapper) -> {
+                cameras.set(index, source);
+                startProcessing(ntinst, index, source, wrapper, scheduler, metricsReporter);
+            }).exceptionally(e -> {
+                System.out.println("Camera '" + config.name + "' failed to start: " + e.getCause());
+                return null;
+            });
         }
+        CompletableFuture.allOf(started).join();
+        bringUp.shutdown();
+        startSwitchedCameras(ntinst);
 
-        PipelineWrapper pipeline = new PipelineWrapper();
-
-        // start image processing on camera 0 if present
-        if (cameras.size() >= 1) {
-            var camera = cameras.get(0);
-            var imageSource = startOutput(camera);
-            VisionThread visionThread = new VisionThread(camera, pipeline, pi -> {
-                //UpdateContours(pi, ntinst.getTable("SNIP/myContoursReport"), imageSource);
-                UpdateLargestContour(pi, ntinst.getTable("SNIP/myContoursReport"), imageSource);
-            });
-            visionThread.start();
+        if (visionConfig.metricsEnabled) {
+            metricsReporter.start();
+        }
+        if (cameras.size() > 1) {
+            System.out.println("Processing " + cameras.size() + " cameras, secondaries on "
+                    + scheduler.getSecondaryWorkers() + " worker thread(s)");
         }
 
         // loop forever
@@ -78,91 +103,108 @@ public final class Version1 {
         }
     }
 
-    private void UpdateLargestContour(PipelineWrapper pi, NetworkTable contoursNetworkTable, CvSource imageSource){
-        try {
-            ArrayList<MatOfPoint> contours = pi.findContoursOutput();
-            Mat outputImage = pi.getSourceImage();
-            double[] areas = new double[1];
-            double[] centerXs = new double[1];
-            double[] centerYs = new double[1];
-            double[] widths = new double[1];
-            double[] heights = new double[1];
-            int largestContour = -1;
-            for (int i = 0; i < contours.size(); i++) {
-                if(largestContour == -1){
-                    largestContour = i;
-                }
-                var areaNew = Imgproc.contourArea(contours.get(i));
-                var areaOld = Imgproc.contourArea(contours.get(largestContour));
-                if(areaNew > areaOld){
-                    largestContour = i;
-                }
-            }
+    private PipelineWrapper newPipeline() {
+        var pipeline = new PipelineWrapper();
+        pipeline.configure(visionConfig);
+        return pipeline;
+    }
 
-            if(largestContour > -1){
-                Imgproc.drawContours(outputImage, contours, largestContour, new Scalar(255, 255, 255), 1);
-                var req = Imgproc.boundingRect(contours.get(largestContour));
-                areas[0] = Imgproc.contourArea(contours.get(largestContour));
-                centerXs[0] = req.x;  // Not wrong
-                centerYs[0] = req.y; // Not wrong
-                widths[0] = req.width;
-                heights[0] = req.height;
-            }
+    /**
+     * Start image processing on one camera, with its own pipeline and table.
+     */
+    private void startProcessing(NetworkTableInstance ntinst, int index, VideoSource camera, PipelineWrapper pipeline,
+                                 VisionScheduler scheduler, MetricsReporter metricsReporter) {
+        var name = cameraConfigs.get(index).name;
+        var contoursTable = ntinst.getTable(contoursTableName(index, name));
+        var metrics = visionConfig.metricsEnabled ? new VisionMetrics(name, true) : VisionMetrics.disabled();
+        var stream = startOutput(camera, index, metrics);
+        var publisher = new ResultPublisher(ntinst, contoursTable, metrics, visionConfig);
+        var tracker = visionConfig.targetTracking ? new TargetTracker(visionConfig) : null;
+        var governor = visionConfig.deadlineMillis > 0
+                ? new QualityGovernor(name, pipeline, stream, camera, contoursTable, visionConfig) : null;
+        var recorder = startRecorder(name, camera);
+        var processor = new CameraProcessor(name, camera, pipeline, metrics,
+                frame -> {
+                    // at half resolution, track and publish in full-resolution pixels
+                    double scale = governor != null ? governor.toFullResolution(frame) : 1;
+                    if (tracker != null) {
+                        tracker.track(frame);
+                        if (frame.hasTarget) {
+                            pipeline.predictTarget(frame.x / scale, frame.y / scale,
+                                    frame.width / scale, frame.height / scale);
+                        }
+                    }
+                    publisher.publish(frame);
+                    for (SwitchedCamera switched : switchedCameras) {
+                        switched.publish(index, frame);
+                    }
+                    if (recorder != null) {
+                        recorder.record(frame);
+                    }
+                    if (governor != null) {
+                        governor.frameProcessed();
+                    }
+                    // only trace target outlines while someone is watching them being drawn
+                    pipeline.setNeedsContour(stream.hasClients());
+                },
+                stream::annotate);
+        processor.start(scheduler, index == 0);
+        if (visionConfig.liveTuning) {
+            new PipelineTuner(name, pipeline, contoursTable.getSubTable("tuning"), visionConfig).start();
+        }
+        metricsReporter.add(metrics);
+    }
 
-            imageSource.putFrame(outputImage);
-            contoursNetworkTable.getEntry("area").setDoubleArray(areas);
-            contoursNetworkTable.getEntry("centerX").setDoubleArray(centerXs);
-            contoursNetworkTable.getEntry("centerY").setDoubleArray(centerYs);
-            contoursNetworkTable.getEntry("width").setDoubleArray(widths);
-            contoursNetworkTable.getEntry("height").setDoubleArray(heights);
-        } catch (Exception e) {
-            System.out.println("Call to UpdateContours failed!");
-            throw e;
+    /**
+     * Start the switched camera streams, over the cameras that are already open.
+     */
+    private void startSwitchedCameras(NetworkTableInstance ntinst) {
+        List<String> names = new ArrayList<>();
+        for (CameraConfig config : cameraConfigs) {
+            names.add(config.name);
+        }
+        SwitchedCamera[] started = new SwitchedCamera[switchedCameraConfigs.size()];
+        for (int i = 0; i < started.length; i++) {
+            started[i] = new SwitchedCamera(switchedCameraConfigs.get(i), ntinst, cameras, names, visionConfig);
         }
+        switchedCameras = started;
     }
 
-    private void UpdateContours(PipelineWrapper pi, NetworkTable contoursNetworkTable, CvSource imageSource) {
+    private MatchRecorder startRecorder(String name, VideoSource camera) {
+        if (visionConfig.recordDirectory == null || visionConfig.recordDirectory.isEmpty()) {
+            return null;
+        }
+        VideoMode mode = camera.getVideoMode();
         try {
-            ArrayList<MatOfPoint> contours = pi.findContoursOutput();
-            Mat outputImage = pi.getSourceImage();
-            double[] areas = new double[contours.size()];
-            double[] centerXs = new double[contours.size()];
-            double[] centerYs = new double[contours.size()];
-            double[] widths = new double[contours.size()];
-            double[] heights = new double[contours.size()];
-            int largestContour = -1;
-            for (int i = 0; i < contours.size(); i++) {
-                Imgproc.drawContours(outputImage, contours, i, new Scalar(255, 255, 255), 1);
-                var req = Imgproc.boundingRect(contours.get(i));
-                areas[i] = Imgproc.contourArea(contours.get(i));
-                centerXs[i] = req.x;  // Not wrong
-                centerYs[i] = req.y; // Not wrong
-                widths[i] = req.width;
-                heights[i] = req.height;
-            }
+            var recorder = new MatchRecorder(name, new File(visionConfig.recordDirectory, name + ".vrec"),
+                    mode.width, mode.height, visionConfig);
+            recorder.start();
+            return recorder;
+        } catch (IOException e) {
+            System.out.println("Camera '" + name + "' will not be recorded: " + e.getMessage());
+            return null;
+        }
+    }
 
-            imageSource.putFrame(outputImage);
-            contoursNetworkTable.getEntry("area").setDoubleArray(areas);
-            contoursNetworkTable.getEntry("centerX").setDoubleArray(centerXs);
-            contoursNetworkTable.getEntry("centerY").setDoubleArray(centerYs);
-            contoursNetworkTable.getEntry("width").setDoubleArray(widths);
-            contoursNetworkTable.getEntry("height").setDoubleArray(heights);
-        } catch (Exception e) {
-            System.out.println("Call to UpdateContours failed!");
-            throw e;
+    /**
+     * The primary camera keeps the original table; the others get one named after the camera.
+     */
+    private String contoursTableName(int index, String cameraName) {
+        if (index == 0) {
+            return "SNIP/myContoursReport";
         }
+        return "SNIP/" + cameraName;
     }
 
-    private CvSource startOutput(VideoSource camera) {
+    private AnnotatedStream startOutput(VideoSource camera, int index, VisionMetrics metrics) {
         CameraServer srv = CameraServer.getInstance();
-        MjpegServer cvStream = new MjpegServer("CV Image Stream", processedImageStreamPort);
-        CvSource imageSource = new CvSource("CV Image Source", VideoMode.PixelFormat.kMJPEG, camera.getVideoMode().width, camera.getVideoMode().height, camera.getVideoMode().fps);
+        String suffix = index == 0 ? "" : " " + camera.getName();
+        MjpegServer cvStream = new MjpegServer("CV Image Stream" + suffix, processedImageStreamPort + index);
+        CvSource imageSource = new CvSource("CV Image Source" + suffix, VideoMode.PixelFormat.kMJPEG, camera.getVideoMode().width, camera.getVideoMode().height, camera.getVideoMode().fps);
         cvStream.setSource(imageSource);
-        cvStream.setFPS(15);
-        cvStream.setCompression(25);
         srv.addServer(cvStream);
 
-        return imageSource;
+        return new AnnotatedStream(camera.getName(), imageSource, cvStream, metrics, visionConfig);
     }
 
     /**
@@ -170,6 +212,7 @@ public final class Version1 {
      */
     private VideoSource startCamera(CameraConfig config) {
         System.out.println("Starting camera '" + config.name + "' on " + config.path);
+        long start = System.nanoTime();
         CameraServer inst = CameraServer.getInstance();
         UsbCamera camera = new UsbCamera(config.name, config.path);
         MjpegServer server = inst.startAutomaticCapture(camera);
@@ -182,6 +225,8 @@ public final class Version1 {
         if (config.streamConfig != null) {
             server.setConfigJson(gson.toJson(config.streamConfig));
         }
+        System.out.println("Camera '" + config.name + "' configured in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
 
         return camera;
     }
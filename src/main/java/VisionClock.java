@@ -0,0 +1,32 @@
+import edu.wpi.first.networktables.NetworkTablesJNI;
+
+/**
+ * The clocks frames are timed on.
+ *
+ * <p>CvSink.grabFrame stamps frames in microseconds on wpi::Now, the same clock that
+ * NetworkTablesJNI.now() reads, so a frame's age is the difference between the two with no
+ * estimate in between. System.nanoTime is used for intervals that never meet a frame's
+ * timestamp, such as rate limits.
+ */
+public final class VisionClock {
+    private VisionClock() {
+    }
+
+    public static long nowMicros() {
+        return System.nanoTime() / 1000;
+    }
+
+    /**
+     * Now on the clock frames are stamped with, in microseconds.
+     */
+    public static long frameClockMicros() {
+        return NetworkTablesJNI.now();
+    }
+
+    /**
+     * Microseconds since a frame was captured.
+     */
+    public static long ageMicros(long captureTime) {
+        return NetworkTablesJNI.now() - captureTime;
+    }
+}
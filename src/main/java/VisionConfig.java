@@ -0,0 +1,96 @@
+@SuppressWarnings("MemberName")
+public class VisionConfig {
+    // per-stage timing, published to SNIP/metrics and logged
+    public boolean metricsEnabled = true;
+    public double metricsPeriodSeconds = 5.0;
+
+    // NetworkTables result publishing
+    public double publishRateHz = 0; // 0 publishes every changed result
+    public double publishEpsilon = 0.5; // results closer than this to the last one are skipped
+    public double publishHeartbeatSeconds = 1.0; // republish unchanged results this often
+
+    // target filter, checked cheapest first; 0 turns a limit off
+    public double minArea = 0;
+    public double maxArea = 0;
+    public double minAspectRatio = 0; // width / height
+    public double maxAspectRatio = 0;
+    public double minFillRatio = 0; // contour area / bounding box area
+    public double maxFillRatio = 0;
+    public double minSolidity = 0; // contour area / convex hull area
+    public double maxSolidity = 0;
+    public double minCenterX = 0; // expected position, as a fraction of the frame size
+    public double maxCenterX = 0;
+    public double minCenterY = 0;
+    public double maxCenterY = 0;
+
+    // "contours" for findContours, or "components" for connected components with stats,
+    // which measures blobs without building an outline for each one
+    public String blobExtraction = "contours";
+
+    // report the best few targets instead of only the largest, ranked by "area", "fill"
+    // or "center"; the best one is always the main target
+    public int maxTargets = 1;
+    public String targetScore = "area";
+
+    // processed MJPEG stream; with a budget, resolution, fps and quality step down to fit it
+    public double streamBandwidthKbps = 0; // per client, 0 always streams at the max settings
+    public int streamMaxFps = 15;
+    public int streamQuality = 25; // JPEG quality, 0 to 100
+
+    // alpha-beta filter on the main target, published as predicted for the time it is sent
+    public boolean targetTracking = false;
+    public double trackerAlpha = 0.5; // position correction, 1 follows each measurement exactly
+    public double trackerBeta = 0.1; // velocity correction
+    public double trackerCoastSeconds = 0.25; // keep predicting through dropouts this long
+    public double trackerLeadSeconds = 0; // extra prediction for the trip to the robot
+
+    // step quality down when processing a frame takes longer than this; 0 is off
+    public double deadlineMillis = 0;
+    public int qosWindowFrames = 15;
+    public int qosMaxLevel = 4; // 1 no overlay, 2 low stream fps, 3 reduced search, 4 low resolution
+
+    // record downscaled frames and their results to <recordDirectory>/<camera name>.vrec,
+    // a ring file holding the last recordSeconds; "" is off. Export with --export. The file
+    // takes recordSeconds * recordFps frames of (width * recordScale) * (height * recordScale)
+    // * 3 bytes: about 11 MB per camera at 320x240 with these defaults, 43 MB at 640x480
+    public String recordDirectory = "";
+    public double recordSeconds = 150;
+    public double recordFps = 5;
+    public double recordScale = 0.25; // fraction of the camera resolution
+    public double recordMaxKBps = 1024; // SD card write budget per camera, 0 for none
+
+    // record where every native Mat was allocated and log the live ones with the metrics
+    public boolean matDebug = false;
+
+    // skip frames that look like the last processed one and reuse its result; a frame
+    // counts as changed when over motionThreshold of a motionWidth pixel wide thumbnail
+    // changed by more than motionPixelDelta grey levels. 0 is off
+    public double motionThreshold = 0;
+    public double motionPixelDelta = 12;
+    public int motionWidth = 40;
+    public int motionRefreshFrames = 15; // process at least one frame in this many
+
+    // search only around the last target while locked on
+    public boolean roiTracking = false;
+    public double roiPadding = 0.5; // fraction of the target size added on each side
+    public int roiMinPadding = 16; // pixels
+
+    // find candidates on a downscaled frame, then refine them at full resolution
+    public double pyramidScale = 1.0; // 1 is off, 0.5 or 0.25 for half or quarter resolution
+    public int pyramidCandidates = 3;
+
+    // threshold through a precomputed BGR lookup table instead of cvtColor + inRange
+    public boolean hsvLookupTable = false;
+    public int hsvLookupThreads = 1;
+
+    // split blur, threshold and dilate into this many strips of each frame run in
+    // parallel, 1 for single-threaded; not used with the lookup table
+    public int pipelineStrips = 1;
+
+    // the pipeline's stages, see PipelineSpec; null runs the GRIP pipeline as generated
+    public PipelineSpec pipeline = null;
+
+    // publish the HSV bounds, blur, dilate and filter limits in each camera's "tuning" table
+    // and apply changes to them live
+    public boolean liveTuning = false;
+}
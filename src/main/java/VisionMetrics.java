@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-camera stage timings and frame counters.
+ *
+ * <p>A disabled instance records nothing and never reads the clock, so instrumentation can
+ * be switched off completely without touching the call sites:
+ *
+ * <pre>
+ * long start = metrics.start();
+ * ...
+ * metrics.stop(VisionStage.BLUR, start);
+ * </pre>
+ */
+public class VisionMetrics {
+    private static final VisionMetrics disabledMetrics = new VisionMetrics("disabled", false);
+
+    private final String name;
+    private final boolean enabled;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[VisionStage.values().length];
+    private final AtomicLong framesProcessed = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+
+    public VisionMetrics(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * A shared instance that records nothing.
+     */
+    public static VisionMetrics disabled() {
+        return disabledMetrics;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start timing a stage.
+     *
+     * @return the start time to hand to stop, or 0 when disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void stop(VisionStage stage, long startNanos) {
+        if (enabled) {
+            histograms[stage.ordinal()].record((System.nanoTime() - startNanos) / 1000);
+        }
+    }
+
+    public void record(VisionStage stage, long micros) {
+        if (enabled) {
+            histograms[stage.ordinal()].record(micros);
+        }
+    }
+
+    public void frameProcessed() {
+        if (enabled) {
+            framesProcessed.incrementAndGet();
+        }
+    }
+
+    public void frameDropped() {
+        if (enabled) {
+            framesDropped.incrementAndGet();
+        }
+    }
+
+    public long getFramesProcessed() {
+        return framesProcessed.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public LatencyHistogram getHistogram(VisionStage stage) {
+        return histograms[stage.ordinal()];
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the detection step of every camera on a bounded set of threads.
+ *
+ * <p>The primary camera gets its own high priority thread. Every other camera shares a pool
+ * that is capped so that, together with the primary thread, no more threads are busy than
+ * there are cores. The primary thread runs its step over and over, and the step waits for
+ * its next frame. A secondary step is only queued on the pool when its camera has a frame
+ * waiting, and processes at most one, so a worker never waits on one camera while another
+ * has a frame ready, and the cameras take turns instead of starving each other.
+ */
+public class VisionScheduler {
+    private final ExecutorService secondaryPool;
+    private final int secondaryWorkers;
+    private volatile boolean stopped;
+
+    public VisionScheduler(int cameraCount) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int secondaries = Math.max(cameraCount - 1, 0);
+        secondaryWorkers = Math.max(1, Math.min(secondaries, cores - 1));
+
+        AtomicInteger threadCount = new AtomicInteger();
+        secondaryPool = Executors.newFixedThreadPool(secondaryWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "Vision worker " + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    public int getSecondaryWorkers() {
+        return secondaryWorkers;
+    }
+
+    /**
+     * Run the primary step over and over until stop is called, or run a secondary step on
+     * the pool each time the returned signal is run.
+     *
+     * @return run when the camera has a frame for the step; does nothing for the primary
+     */
+    public Runnable start(String name, Runnable step, boolean primary) {
+        if (primary) {
+            Thread thread = new Thread(() -> {
+                while (!stopped) {
+                    runStep(name, step);
+                }
+            }, "Vision " + name);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+            return () -> { };
+        }
+        return new SignalledStep(name, step)::signal;
+    }
+
+    public void stop() {
+        stopped = true;
+        secondaryPool.shutdown();
+    }
+
+    private static void runStep(String name, Runnable step) {
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            System.out.println("Vision processing for '" + name + "' failed: " + e);
+        }
+    }
+
+    private final class SignalledStep implements Runnable {
+        private final String name;
+        private final Runnable step;
+        private final AtomicBoolean queued = new AtomicBoolean();
+
+        SignalledStep(String name, Runnable step) {
+            this.name = name;
+            this.step = step;
+        }
+
+        /**
+         * Queue the step unless it is queued already. Called on the camera's capture thread.
+         */
+        void signal() {
+            if (!stopped && queued.compareAndSet(false, true)) {
+                secondaryPool.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            // cleared first, so a frame arriving while the step runs queues it again
+            queued.set(false);
+            runStep(name, step);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * The timed stages of the vision loop, in the order a frame passes through them.
+ */
+public enum VisionStage {
+    GRAB("grab"),
+    MOTION("motion"),
+    BLUR("blur"),
+    HSV_THRESHOLD("hsvThreshold"),
+    DILATE("dilate"),
+    THRESHOLD_DILATE("thresholdDilate"),
+    STRIPS("strips"),
+    FIND_CONTOURS("findContours"),
+    CONNECTED_COMPONENTS("connectedComponents"),
+    SELECT("select"),
+    PUBLISH("publish"),
+    ANNOTATE("annotate"),
+    PUT_FRAME("putFrame");
+
+    private final String key;
+
+    VisionStage(String key) {
+        this.key = key;
+    }
+
+    /**
+     * The NetworkTables key the stage is reported under.
+     */
+    public String getKey() {
+        return key;
+    }
+}